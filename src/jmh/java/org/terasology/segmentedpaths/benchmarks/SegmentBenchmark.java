@@ -0,0 +1,128 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.benchmarks;
+
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.segmentedpaths.segments.CurvedSegment;
+import org.terasology.segmentedpaths.segments.LinearSegment;
+import org.terasology.segmentedpaths.segments.Segment;
+
+import java.util.Random;
+
+/**
+ * Measures the evaluation, lookup and construction cost of {@link LinearSegment} and {@link CurvedSegment} for
+ * different numbers of subsegments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SegmentBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"LINEAR", "CURVED"})
+    public String type;
+
+    @Param({"1", "40", "200"})
+    public int subsegments;
+
+    private Segment segment;
+    private final float[] positions = new float[QUERIES];
+    private final Vector3f[] queryPoints = new Vector3f[QUERIES];
+    private final Vector3f segmentPosition = new Vector3f(10, 2, -3);
+    private final Quaternionf segmentRotation = new Quaternionf().rotateY(0.7f);
+    private final Vector3f dest = new Vector3f();
+    private int query;
+    private int hint;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("CURVED".equals(type)) {
+            segment = new CurvedSegment(SyntheticPaths.curved(subsegments), new Vector3f(0, 1, 0));
+        } else {
+            segment = new LinearSegment(SyntheticPaths.linear(subsegments));
+        }
+        Random random = new Random(42);
+        for (int x = 0; x < QUERIES; x++) {
+            positions[x] = random.nextFloat() * segment.maxDistance();
+            queryPoints[x] = segment.point(segment.index(positions[x]), random.nextFloat(), segmentPosition, segmentRotation)
+                .add(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+        }
+    }
+
+    private int nextQuery() {
+        query = (query + 1) & (QUERIES - 1);
+        return query;
+    }
+
+    @Benchmark
+    public Vector3f point() {
+        float position = positions[nextQuery()];
+        int index = segment.index(position);
+        return segment.point(index, segment.getSegmentPosition(index, position), segmentPosition, segmentRotation, dest);
+    }
+
+    @Benchmark
+    public Vector3f tangent() {
+        float position = positions[nextQuery()];
+        int index = segment.index(position);
+        return segment.tangent(index, segment.getSegmentPosition(index, position), segmentRotation, dest);
+    }
+
+    @Benchmark
+    public Vector3f normal() {
+        float position = positions[nextQuery()];
+        int index = segment.index(position);
+        return segment.normal(index, segment.getSegmentPosition(index, position), segmentRotation, dest);
+    }
+
+    @Benchmark
+    public int index() {
+        return segment.index(positions[nextQuery()]);
+    }
+
+    /**
+     * Steady forward motion, the case the hinted lookup is meant for.
+     */
+    @Benchmark
+    public int indexHinted() {
+        int step = nextQuery();
+        hint = segment.index(segment.maxDistance() * step / QUERIES, hint);
+        return hint;
+    }
+
+    @Benchmark
+    public float getSegmentPosition() {
+        float position = positions[nextQuery()];
+        return segment.getSegmentPosition(segment.index(position), position);
+    }
+
+    @Benchmark
+    public float nearestSegmentPosition() {
+        return segment.nearestSegmentPosition(queryPoints[nextQuery()], segmentPosition, segmentRotation);
+    }
+
+    @Benchmark
+    public Segment calculateLength() {
+        if (segment instanceof CurvedSegment) {
+            ((CurvedSegment) segment).calculateLength();
+        } else {
+            ((LinearSegment) segment).calculateLength();
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.benchmarks;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.registry.InjectionHelper;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.segmentedpaths.SegmentMeta;
+import org.terasology.segmentedpaths.components.LinearPathComponent;
+import org.terasology.segmentedpaths.controllers.SegmentCacheSystem;
+import org.terasology.segmentedpaths.controllers.SegmentMapping;
+import org.terasology.segmentedpaths.controllers.SegmentMetricsSystem;
+import org.terasology.segmentedpaths.controllers.SegmentSystem;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures {@link SegmentSystem#updateSegmentMeta} crossing a given number of segment boundaries per call, on a straight
+ * track of unit length rail segments held in memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SegmentMetaBenchmark {
+
+    private static final int TRACK_LENGTH = 256;
+
+    @Param({"0", "1", "8", "32"})
+    public int hops;
+
+    private SegmentSystem segmentSystem;
+    private SegmentMapping mapping;
+    private EntityRef[] track;
+    private Prefab prefab;
+    private final SegmentMeta meta = new SegmentMeta();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LinearPathComponent path = new LinearPathComponent();
+        path.path = Arrays.asList(SyntheticPaths.straight());
+        prefab = mock(Prefab.class);
+        when(prefab.getName()).thenReturn("benchmark:straight");
+        when(prefab.getComponent(LinearPathComponent.class)).thenReturn(path);
+
+        track = new EntityRef[TRACK_LENGTH];
+        Map<EntityRef, Integer> indices = new HashMap<>();
+        for (int x = 0; x < TRACK_LENGTH; x++) {
+            LocationComponent location = new LocationComponent();
+            location.setWorldPosition(new Vector3f(x, 0, 0));
+            EntityRef entity = mock(EntityRef.class);
+            when(entity.exists()).thenReturn(true);
+            when(entity.hasComponent(BlockComponent.class)).thenReturn(false);
+            when(entity.hasComponent(LocationComponent.class)).thenReturn(true);
+            when(entity.getComponent(LocationComponent.class)).thenReturn(location);
+            track[x] = entity;
+            indices.put(entity, x);
+        }
+        mapping = (segmentMeta, ends) -> {
+            int next = indices.get(segmentMeta.association) + (ends == SegmentMapping.SegmentEnd.END ? 1 : -1);
+            if (next < 0 || next >= TRACK_LENGTH) {
+                return null;
+            }
+            return new SegmentMapping.MappingResult(prefab, track[next]);
+        };
+
+        ContextImpl context = new ContextImpl();
+        context.put(SegmentMetricsSystem.class, new SegmentMetricsSystem());
+        SegmentCacheSystem segmentCacheSystem = new SegmentCacheSystem();
+        context.put(SegmentCacheSystem.class, segmentCacheSystem);
+        InjectionHelper.inject(segmentCacheSystem, context);
+        segmentSystem = new SegmentSystem();
+        InjectionHelper.inject(segmentSystem, context);
+    }
+
+    @Benchmark
+    public SegmentMeta updateSegmentMeta() {
+        meta.association = track[0];
+        meta.prefab = prefab;
+        meta.position = 0.5f;
+        meta.sign = 1;
+        segmentSystem.updateSegmentMeta(meta, hops + 0.25f, mapping);
+        return meta;
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.benchmarks;
+
+import org.joml.Vector3f;
+import org.terasology.segmentedpaths.components.CurvedPathComponent;
+import org.terasology.segmentedpaths.components.LinearPathComponent;
+
+/**
+ * Generates path geometry with a given number of subsegments for the benchmarks.
+ */
+final class SyntheticPaths {
+
+    private SyntheticPaths() {
+    }
+
+    /**
+     * @return the points of a polyline with {@code subsegments} segments winding along a helix.
+     */
+    static LinearPathComponent.Linear[] linear(int subsegments) {
+        LinearPathComponent.Linear[] points = new LinearPathComponent.Linear[subsegments + 1];
+        for (int x = 0; x <= subsegments; x++) {
+            LinearPathComponent.Linear linear = new LinearPathComponent.Linear();
+            linear.point = helix(x);
+            linear.binormal = new Vector3f(0, 1, 0);
+            points[x] = linear;
+        }
+        return points;
+    }
+
+    /**
+     * @return {@code subsegments} joined cubic bezier curves winding along a helix.
+     */
+    static CurvedPathComponent.CubicBezier[] curved(int subsegments) {
+        CurvedPathComponent.CubicBezier[] curves = new CurvedPathComponent.CubicBezier[subsegments];
+        for (int x = 0; x < subsegments; x++) {
+            CurvedPathComponent.CubicBezier curve = new CurvedPathComponent.CubicBezier();
+            curve.f1 = helix(x);
+            curve.f2 = helix(x + 0.33f).add(0, 0.1f, 0);
+            curve.f3 = helix(x + 0.66f).sub(0, 0.1f, 0);
+            curve.f4 = helix(x + 1);
+            curves[x] = curve;
+        }
+        return curves;
+    }
+
+    /**
+     * @return the points of a straight rail running along the x axis through a unit block.
+     */
+    static LinearPathComponent.Linear[] straight() {
+        LinearPathComponent.Linear start = new LinearPathComponent.Linear();
+        start.point = new Vector3f(-0.5f, 0, 0);
+        start.binormal = new Vector3f(0, 0, -1);
+        LinearPathComponent.Linear end = new LinearPathComponent.Linear();
+        end.point = new Vector3f(0.5f, 0, 0);
+        end.binormal = new Vector3f(0, 0, -1);
+        return new LinearPathComponent.Linear[]{start, end};
+    }
+
+    private static Vector3f helix(float step) {
+        float angle = step * 0.3f;
+        return new Vector3f((float) Math.cos(angle) * 4f, step * 0.05f, (float) Math.sin(angle) * 4f);
+    }
+}
@@ -30,6 +30,17 @@ public class SegmentMeta {
     public Prefab prefab;
     @Replicate
     public int sign = 1;
+    /**
+     * Returned by {@link #getCachedHandle(int)} if no segment handle is cached.
+     */
+    public static final int NO_HANDLE = Integer.MIN_VALUE;
+
+    // the subsegment index last resolved for the position, used as a starting point for the next lookup
+    private transient int indexHint;
+    // the segment handle the SegmentCacheSystem resolved for handlePrefab at handleGeneration of the cache
+    private transient int segmentHandle;
+    private transient Prefab handlePrefab;
+    private transient int handleGeneration;
 
     public SegmentMeta() {
 
@@ -39,6 +50,11 @@ public class SegmentMeta {
         this.position = meta.position;
         this.association = meta.association;
         this.prefab = meta.prefab;
+        this.sign = meta.sign;
+        this.indexHint = meta.indexHint;
+        this.segmentHandle = meta.segmentHandle;
+        this.handlePrefab = meta.handlePrefab;
+        this.handleGeneration = meta.handleGeneration;
     }
 
     public SegmentMeta(float position, EntityRef association, Prefab prefab) {
@@ -46,4 +62,62 @@ public class SegmentMeta {
         this.association = association;
         this.position = position;
     }
+
+    /**
+     * Copies all state of the given meta, including its sign, into this one.
+     *
+     * @param meta The meta to copy
+     * @return This meta
+     */
+    public SegmentMeta set(SegmentMeta meta) {
+        this.position = meta.position;
+        this.association = meta.association;
+        this.prefab = meta.prefab;
+        this.sign = meta.sign;
+        this.indexHint = meta.indexHint;
+        this.segmentHandle = meta.segmentHandle;
+        this.handlePrefab = meta.handlePrefab;
+        this.handleGeneration = meta.handleGeneration;
+        return this;
+    }
+
+    /**
+     * @return the subsegment index last resolved for {@link #position}, a starting point for the next lookup.
+     */
+    public int getIndexHint() {
+        return indexHint;
+    }
+
+    /**
+     * @param indexHint The subsegment index resolved for {@link #position}
+     */
+    public void setIndexHint(int indexHint) {
+        this.indexHint = indexHint;
+    }
+
+    /**
+     * Returns the segment handle cached for {@link #prefab} by the SegmentCacheSystem, if it was cached for the current
+     * prefab at the given generation of the cache.
+     *
+     * @param generation The current generation of the cache
+     * @return The handle, or {@link #NO_HANDLE} if none is cached
+     */
+    public int getCachedHandle(int generation) {
+        if (handlePrefab != prefab || handleGeneration != generation) {
+            return NO_HANDLE;
+        }
+        return segmentHandle;
+    }
+
+    /**
+     * Caches the segment handle of {@link #prefab} for the SegmentCacheSystem.
+     *
+     * @param handle The handle
+     * @param generation The generation of the cache the handle was resolved at
+     */
+    public void setCachedHandle(int handle, int generation) {
+        this.segmentHandle = handle;
+        this.handlePrefab = prefab;
+        this.handleGeneration = generation;
+    }
 }
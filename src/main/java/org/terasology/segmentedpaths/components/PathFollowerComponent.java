@@ -4,22 +4,128 @@ package org.terasology.segmentedpaths.components;
 
 import org.joml.Vector3f;
 import org.terasology.engine.network.Replicate;
+import org.terasology.engine.network.ReplicationCheck;
 import org.terasology.gestalt.entitysystem.component.Component;
+import org.terasology.reflection.metadata.FieldMetadata;
 import org.terasology.segmentedpaths.SegmentMeta;
 
 /**
  * Used to create entities that follow paths.
+ * <p>
+ * With {@link #compactReplication} set, the segment a follower is on is only replicated when it changes, and otherwise
+ * just its position on that segment is sent, quantized to {@link #POSITION_QUANTUM}. Clients derive the heading from the
+ * segment themselves. Followers in this mode should only be moved through the PathFollowerSystem, which keeps the
+ * replicated state up to date.
+ * <p>
+ * {@link #previousSegmentMeta} holds the state the follower is rendered from when the PathFollowerSystem runs in fixed
+ * step mode, see {@code PathFollowerSystem#setFixedStep}.
+ * <p>
+ * With {@link #kinematics} set, the PathFollowerSystem moves the follower by itself each update according to its speed,
+ * acceleration and limits, see {@code PathFollowerSystem#setKinematicsMapping}. Consumers then only adjust
+ * {@link #acceleration} or {@link #speed} instead of moving the follower themselves. In compact mode, the speed and
+ * acceleration are only replicated with the initial state, as clients do not move followers themselves.
  */
-public class PathFollowerComponent implements Component<PathFollowerComponent> {
+public class PathFollowerComponent implements Component<PathFollowerComponent>, ReplicationCheck {
+    /**
+     * The resolution, in blocks, of the position replicated in compact mode.
+     */
+    public static final float POSITION_QUANTUM = 1f / 1024;
+
     @Replicate
     public SegmentMeta segmentMeta;
     @Replicate
     public Vector3f heading;
+    @Replicate
+    public boolean compactReplication;
+    /**
+     * Whether the follower is moved by the PathFollowerSystem according to its speed and acceleration.
+     */
+    @Replicate
+    public boolean kinematics;
+    /**
+     * The speed along the heading in blocks per second, negative when moving backwards.
+     */
+    @Replicate
+    public float speed;
+    /**
+     * The change of {@link #speed} in blocks per second squared.
+     */
+    @Replicate
+    public float acceleration;
+    /**
+     * The largest magnitude of {@link #speed}, or 0 for no limit.
+     */
+    @Replicate
+    public float maxSpeed;
+    /**
+     * The largest acceleration towards the inside of bends in blocks per second squared, or 0 for no limit. Limits the
+     * speed on a bend of curvature k to the square root of this over k.
+     */
+    @Replicate
+    public float maxLateralAcceleration;
+    /**
+     * The largest rate in blocks per second squared at which the follower brakes when it is too fast for a bend, or 0
+     * to drop to the speed allowed on the bend at once.
+     */
+    @Replicate
+    public float maxDeceleration;
+    /**
+     * The position on the current segment in multiples of {@link #POSITION_QUANTUM}, replicated in compact mode.
+     */
+    @Replicate
+    public int quantizedPosition;
+    /**
+     * Whether the follower has changed segment since the last update was replicated, only tracked on the authority.
+     */
+    public transient boolean segmentChanged;
+    /**
+     * Whether the segment change flagged by {@link #segmentChanged} has been replicated; both are cleared when the
+     * follower is moved next.
+     */
+    public transient boolean segmentChangeSent;
+    /**
+     * The state at the start of the current fixed step on the authority, or the state of the update received before the
+     * last one on remote clients. Null until the first step or update.
+     */
+    public transient SegmentMeta previousSegmentMeta;
 
     @Override
     public void copyFrom(PathFollowerComponent other) {
         this.segmentMeta = new SegmentMeta(other.segmentMeta);
         this.segmentMeta.sign = other.segmentMeta.sign;
         this.heading = new Vector3f(other.heading);
+        this.compactReplication = other.compactReplication;
+        this.kinematics = other.kinematics;
+        this.speed = other.speed;
+        this.acceleration = other.acceleration;
+        this.maxSpeed = other.maxSpeed;
+        this.maxLateralAcceleration = other.maxLateralAcceleration;
+        this.maxDeceleration = other.maxDeceleration;
+        this.quantizedPosition = other.quantizedPosition;
+        this.segmentChanged = other.segmentChanged;
+        this.segmentChangeSent = other.segmentChangeSent;
+        this.previousSegmentMeta = other.previousSegmentMeta == null ? null
+            : new SegmentMeta().set(other.previousSegmentMeta);
+    }
+
+    @Override
+    public boolean shouldReplicate(FieldMetadata<?, ?> field, boolean initial, boolean toOwner) {
+        switch (field.getName()) {
+            case "segmentMeta":
+                if (initial || !compactReplication) {
+                    return true;
+                }
+                // all clients are served in the same network tick, so the flag is only cleared by the next move
+                segmentChangeSent |= segmentChanged;
+                return segmentChanged;
+            case "heading":
+            case "speed":
+            case "acceleration":
+                return initial || !compactReplication;
+            case "quantizedPosition":
+                return compactReplication;
+            default:
+                return true;
+        }
     }
 }
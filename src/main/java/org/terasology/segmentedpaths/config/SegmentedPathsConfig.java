@@ -0,0 +1,33 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.config;
+
+import org.terasology.engine.config.flexible.AutoConfig;
+import org.terasology.engine.config.flexible.Setting;
+
+import static org.terasology.engine.config.flexible.SettingArgument.defaultValue;
+import static org.terasology.engine.config.flexible.SettingArgument.description;
+import static org.terasology.engine.config.flexible.SettingArgument.name;
+import static org.terasology.engine.config.flexible.SettingArgument.type;
+
+/**
+ * Settings of the SegmentedPaths module, stored by the engine along with the other module configurations.
+ */
+public class SegmentedPathsConfig extends AutoConfig {
+
+    /**
+     * Whether the precomputed tables of curved segments are kept in the sandbox directory across starts, see
+     * {@link org.terasology.segmentedpaths.controllers.SegmentCacheSystem}.
+     */
+    public final Setting<Boolean> keepSegmentTables = setting(
+            type(Boolean.class),
+            defaultValue(false),
+            name("Keep segment tables"),
+            description("Stores the precomputed tables of curved segments, so they are not calculated again on the next start")
+    );
+
+    @Override
+    public String getName() {
+        return "SegmentedPaths";
+    }
+}
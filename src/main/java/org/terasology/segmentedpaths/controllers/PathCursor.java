@@ -0,0 +1,180 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.joml.Vector3f;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.segmentedpaths.SegmentMeta;
+import org.terasology.segmentedpaths.components.PathFollowerComponent;
+
+/**
+ * A reusable point on a path, placed relative to an origin such as a vehicle's current position. Moving the cursor walks
+ * the path from wherever it was left, so sampling several offsets in order traverses each segment once instead of once
+ * per offset. A cursor holds its own state and allocates nothing after construction, except to grow the buffer used by
+ * {@link #sample}.
+ * <p>
+ * Cursors are obtained from {@link PathFollowerSystem#cursor()} and, like its query methods, may only be used from the
+ * game thread.
+ */
+public final class PathCursor {
+    private final PathFollowerSystem pathFollowerSystem;
+    private final SegmentSystem segmentSystem;
+    private final SegmentMeta origin = new SegmentMeta();
+    private final SegmentMeta meta = new SegmentMeta();
+    private float offset;
+    private boolean[] resolved = new boolean[0];
+
+    PathCursor(PathFollowerSystem pathFollowerSystem, SegmentSystem segmentSystem) {
+        this.pathFollowerSystem = pathFollowerSystem;
+        this.segmentSystem = segmentSystem;
+    }
+
+    /**
+     * Places the cursor at the current position of the given vehicle.
+     *
+     * @param vehicleEntity Vehicle whose position becomes the origin of the cursor
+     * @return This cursor
+     */
+    public PathCursor set(EntityRef vehicleEntity) {
+        return set(vehicleEntity.getComponent(PathFollowerComponent.class).segmentMeta);
+    }
+
+    /**
+     * Places the cursor at the given position on a path. The meta is copied and is not modified by the cursor.
+     *
+     * @param segmentMeta Position that becomes the origin of the cursor
+     * @return This cursor
+     */
+    public PathCursor set(SegmentMeta segmentMeta) {
+        origin.set(segmentMeta);
+        meta.set(segmentMeta);
+        offset = 0;
+        return this;
+    }
+
+    /**
+     * Moves the cursor to the given distance from its origin, in the direction the origin is facing. The path is walked
+     * from the current position of the cursor, or from the origin when that is closer.
+     * <p>
+     * If the end of the path is reached, the cursor is returned to its origin.
+     *
+     * @param distance Distance from the origin, negative distances lie behind it
+     * @param mapping A mapping to be used for figuring out chaining of segments
+     * @return False if the end of path has been reached, true otherwise
+     */
+    public boolean moveTo(float distance, SegmentMapping mapping) {
+        if (Math.abs(distance) < Math.abs(distance - offset)) {
+            meta.set(origin);
+            offset = 0;
+        }
+        float delta = distance - offset;
+        if (delta == 0) {
+            return true;
+        }
+        if (segmentSystem.updateSegmentMeta(meta, meta.sign * delta, mapping)) {
+            offset = distance;
+            return true;
+        }
+        meta.set(origin);
+        offset = 0;
+        return false;
+    }
+
+    /**
+     * Samples the path at several distances from the origin, writing the results into the given buffers. Any of the
+     * buffers may be null if that quantity is not needed. Offsets are visited in the given order, so sorting them keeps
+     * the walk along the path as short as possible.
+     * <p>
+     * Buffer entries for offsets beyond the end of the path are left untouched; use {@link #isResolved(int)} to tell
+     * them apart.
+     *
+     * @param offsets Distances from the origin, negative distances lie behind it
+     * @param mapping A mapping to be used for figuring out chaining of segments
+     * @param points Will hold the point at each offset
+     * @param tangents Will hold the tangent at each offset
+     * @param normals Will hold the normal at each offset
+     * @return The number of offsets that lie on the path
+     */
+    public int sample(float[] offsets, SegmentMapping mapping, Vector3f[] points, Vector3f[] tangents,
+                      Vector3f[] normals) {
+        if (resolved.length < offsets.length) {
+            resolved = new boolean[offsets.length];
+        }
+        int count = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            resolved[i] = moveTo(offsets[i], mapping);
+            if (!resolved[i]) {
+                continue;
+            }
+            if (points != null) {
+                point(points[i]);
+            }
+            if (tangents != null) {
+                tangent(tangents[i]);
+            }
+            if (normals != null) {
+                normal(normals[i]);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the offset at the given index of the last {@link #sample} call lies on the path.
+     *
+     * @param index Index into the offsets passed to {@link #sample}
+     * @return True if the buffers hold a result for that offset
+     */
+    public boolean isResolved(int index) {
+        return resolved[index];
+    }
+
+    /**
+     * Returns the distance of the cursor from its origin.
+     *
+     * @return The distance, negative if the cursor lies behind the origin
+     */
+    public float getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the position the cursor is currently at. The returned meta is owned by the cursor and changes as it moves.
+     *
+     * @return The current position
+     */
+    public SegmentMeta getSegmentMeta() {
+        return meta;
+    }
+
+    /**
+     * Stores the point on the path at the cursor in {@code dest}.
+     *
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f point(Vector3f dest) {
+        return pathFollowerSystem.point(meta, dest);
+    }
+
+    /**
+     * Stores the tangent to the path at the cursor in {@code dest}.
+     *
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f tangent(Vector3f dest) {
+        return pathFollowerSystem.tangent(meta, dest);
+    }
+
+    /**
+     * Stores the normal to the path at the cursor in {@code dest}.
+     *
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f normal(Vector3f dest) {
+        return pathFollowerSystem.normal(meta, dest);
+    }
+}
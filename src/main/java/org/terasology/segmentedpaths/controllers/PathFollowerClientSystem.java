@@ -0,0 +1,93 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.joml.Vector3f;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.segmentedpaths.SegmentMeta;
+import org.terasology.segmentedpaths.components.PathFollowerComponent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Restores the state of path followers replicated in compact mode on remote clients: the position on the segment from
+ * its quantized form, and the heading from the segment.
+ * <p>
+ * When the PathFollowerSystem is in fixed step mode, the previously received state of each follower is also kept as its
+ * {@link PathFollowerComponent#previousSegmentMeta}, so followers can be rendered between the last two updates. The time
+ * each follower was last updated is kept as well, so followers arriving in different network updates are each
+ * interpolated from their own update, see {@link PathFollowerSystem#getInterpolationAlpha(EntityRef)}.
+ */
+@RegisterSystem(RegisterMode.REMOTE_CLIENT)
+public class PathFollowerClientSystem extends BaseComponentSystem {
+
+    @In
+    private PathFollowerSystem pathFollowerSystem;
+
+    // the last state received for each follower, which becomes its previous state when the next one arrives
+    private final Map<EntityRef, Received> received = new HashMap<>();
+
+    @Override
+    public void initialise() {
+        pathFollowerSystem.setReceiveTimes(this::receivedAt);
+    }
+
+    @Override
+    public void shutdown() {
+        pathFollowerSystem.setReceiveTimes(null);
+    }
+
+    @ReceiveEvent(components = PathFollowerComponent.class)
+    public void onFollowerChanged(OnChangedComponent event, EntityRef entity) {
+        PathFollowerComponent vehicle = entity.getComponent(PathFollowerComponent.class);
+        if (vehicle.segmentMeta == null || vehicle.segmentMeta.prefab == null) {
+            return;
+        }
+        if (vehicle.compactReplication) {
+            vehicle.segmentMeta.position = vehicle.quantizedPosition * PathFollowerComponent.POSITION_QUANTUM;
+            if (vehicle.heading == null) {
+                vehicle.heading = new Vector3f();
+            }
+            pathFollowerSystem.vehicleTangent(entity, vehicle.heading).mul(vehicle.segmentMeta.sign);
+        }
+        if (pathFollowerSystem.getFixedStep() > 0) {
+            Received last = received.computeIfAbsent(entity, key -> new Received(vehicle.segmentMeta));
+            if (vehicle.previousSegmentMeta == null) {
+                vehicle.previousSegmentMeta = new SegmentMeta();
+            }
+            vehicle.previousSegmentMeta.set(last.segmentMeta);
+            last.segmentMeta.set(vehicle.segmentMeta);
+            last.time = pathFollowerSystem.getClock();
+        }
+    }
+
+    @ReceiveEvent(components = PathFollowerComponent.class)
+    public void onFollowerDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        received.remove(entity);
+    }
+
+    private double receivedAt(EntityRef entity) {
+        Received last = received.get(entity);
+        return last == null ? Double.NaN : last.time;
+    }
+
+    /**
+     * The last state received for a follower and when it was received, in the time of the PathFollowerSystem.
+     */
+    private static final class Received {
+        private final SegmentMeta segmentMeta;
+        private double time;
+
+        private Received(SegmentMeta segmentMeta) {
+            this.segmentMeta = new SegmentMeta().set(segmentMeta);
+        }
+    }
+}
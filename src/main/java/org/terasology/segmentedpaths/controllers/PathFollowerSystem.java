@@ -18,29 +18,388 @@ package org.terasology.segmentedpaths.controllers;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.network.NetworkSystem;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.registry.Share;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.segmentedpaths.SegmentMeta;
 import org.terasology.segmentedpaths.components.PathFollowerComponent;
 import org.terasology.segmentedpaths.events.OnExitSegment;
 import org.terasology.segmentedpaths.events.OnVisitSegment;
 import org.terasology.segmentedpaths.segments.Segment;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
 /**
  * A class for working with entities following a path.
+ * <p>
+ * By default vehicles are moved by whatever distance callers pass, whenever they call. In fixed step mode, enabled by
+ * {@link #setFixedStep(float)}, the authority instead advances the simulation in steps of a fixed duration: at the start
+ * of each step the state of every follower is kept as its {@link PathFollowerComponent#previousSegmentMeta}, then the
+ * registered {@link StepListener}s move the vehicles. Rendering uses {@link #interpolatedVehiclePoint} and
+ * {@link #interpolatedVehicleTangent} at {@link #getInterpolationAlpha(EntityRef)} to place vehicles between the last two
+ * states, so it can run at any frame rate while simulation and replication run at the lower, fixed one.
+ * <p>
+ * Followers with {@link PathFollowerComponent#kinematics} set are moved by the system itself once a mapping has been set
+ * with {@link #setKinematicsMapping(SegmentMapping)}: every update, or every fixed step after the step listeners, a single
+ * pass advances their speeds and moves them all with {@link #moveAll}.
  */
 @RegisterSystem(RegisterMode.ALWAYS)
 @Share(value = PathFollowerSystem.class)
-public class PathFollowerSystem extends BaseComponentSystem {
+public class PathFollowerSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+    /**
+     * How often kinematic followers are saved by default, in seconds.
+     */
+    public static final float DEFAULT_KINEMATICS_SAVE_INTERVAL = 0.1f;
+
+    // upper bound on the fixed steps run by a single update
+    private static final int MAX_STEPS_PER_UPDATE = 8;
+
     @In
     SegmentSystem segmentSystem;
 
     @In
     SegmentCacheSystem segmentCacheSystem;
 
+    @In
+    SegmentMetricsSystem metrics;
+
+    @In
+    NetworkSystem networkSystem;
+
+    // scratch space for segment poses; the query methods are only called from the game thread
+    private final Vector3f position = new Vector3f();
+    private final Quaternionf rotation = new Quaternionf();
+    // scratch space for the single look-ahead queries, likewise only used from the game thread
+    private final SegmentMeta lookAhead = new SegmentMeta();
+    // all active followers, whose state is kept at the start of each fixed step
+    private final Set<EntityRef> followers = new LinkedHashSet<>();
+    private final List<StepListener> stepListeners = new CopyOnWriteArrayList<>();
+    // the duration of a fixed step in seconds, or 0 if fixed step mode is off
+    private float fixedStep;
+    // time since the start of the current step, only advanced on the authority
+    private float accumulator;
+    // time passed in updates, in seconds
+    private double clock;
+    // on remote clients, the clock time the current state of a follower was received at, NaN if none was received
+    private ToDoubleFunction<EntityRef> receiveTimes;
+    private final Vector3f interpolated = new Vector3f();
+    // the mapping kinematic followers are moved with, or null if they are not moved
+    private SegmentMapping kinematicsMapping;
+    // scratch space for the kinematic followers moved in one pass, with the segment each was on and the speed it had
+    // before
+    private final List<EntityRef> kinematicVehicles = new ArrayList<>();
+    private final List<EntityRef> kinematicAssociations = new ArrayList<>();
+    private final List<Prefab> kinematicPrefabs = new ArrayList<>();
+    private float[] kinematicDeltas = new float[16];
+    private float[] kinematicSpeeds = new float[16];
+    // how often all kinematic followers are saved in seconds, and the time since they were last saved
+    private float kinematicsSaveInterval = DEFAULT_KINEMATICS_SAVE_INTERVAL;
+    private float sinceKinematicsSave;
+    // scratch space for moveAll and moveAllParallel, null while a pass is using it
+    private MoveBuffers moveBuffers = new MoveBuffers();
+
+    @ReceiveEvent(components = PathFollowerComponent.class)
+    public void onFollowerActivated(OnActivatedComponent event, EntityRef entity) {
+        followers.add(entity);
+    }
+
+    @ReceiveEvent(components = PathFollowerComponent.class)
+    public void onFollowerDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        followers.remove(entity);
+    }
+
+    @Override
+    public void update(float delta) {
+        clock += delta;
+        if (fixedStep > 0) {
+            advance(delta);
+        } else if (kinematicsMapping != null && networkSystem.getMode().isAuthority()) {
+            advanceKinematics(delta, kinematicsMapping);
+        }
+    }
+
+    /**
+     * Runs the fixed steps that are due after the given time has passed. On remote clients no steps are run, as their
+     * states arrive from the authority.
+     */
+    private void advance(float delta) {
+        if (!networkSystem.getMode().isAuthority()) {
+            return;
+        }
+        accumulator += delta;
+        int steps = 0;
+        while (accumulator >= fixedStep) {
+            if (steps == MAX_STEPS_PER_UPDATE) {
+                // after a stall, drop the time that could not be caught up on rather than falling further behind
+                accumulator = 0;
+                break;
+            }
+            accumulator -= fixedStep;
+            step();
+            steps++;
+        }
+    }
+
+    private void step() {
+        for (EntityRef vehicleEntity : followers) {
+            PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+            if (vehicle == null || vehicle.segmentMeta == null) {
+                continue;
+            }
+            if (vehicle.previousSegmentMeta == null) {
+                vehicle.previousSegmentMeta = new SegmentMeta();
+            }
+            vehicle.previousSegmentMeta.set(vehicle.segmentMeta);
+        }
+        for (StepListener listener : stepListeners) {
+            listener.step(fixedStep);
+        }
+        if (kinematicsMapping != null) {
+            advanceKinematics(fixedStep, kinematicsMapping);
+        }
+    }
+
+    /**
+     * Sets the mapping followers with {@link PathFollowerComponent#kinematics} set are moved with on each update, or on
+     * each fixed step in fixed step mode. Only the authority moves them.
+     *
+     * @param mapping The mapping to be used for figuring out segment chaining, or null to not move kinematic followers
+     */
+    public void setKinematicsMapping(SegmentMapping mapping) {
+        this.kinematicsMapping = mapping;
+    }
+
+    /**
+     * @return the mapping kinematic followers are moved with, or null if they are not moved
+     */
+    public SegmentMapping getKinematicsMapping() {
+        return kinematicsMapping;
+    }
+
+    /**
+     * Advances the speed of every follower with {@link PathFollowerComponent#kinematics} set by the given time and moves
+     * it accordingly, all in one pass. The speed
+     * is clamped to the maximum speed of the follower. On bends, a follower faster than its maximum lateral acceleration
+     * allows at the curvature at its position brakes down to that limit at its
+     * {@link PathFollowerComponent#maxDeceleration}, or is clamped to it at once if that is 0. Braking only starts on the
+     * bend itself, so followers that should enter bends at the limit have to be slowed down in advance. A follower
+     * reaching the end of its path is stopped.
+     * <p>
+     * The component of a follower is saved, so the change is persisted and replicated, right away when the follower
+     * stopped or changed segment, and otherwise only every {@link #getKinematicsSaveInterval()} seconds; in between the
+     * state is only changed in memory.
+     *
+     * @param delta The time to advance by, in seconds
+     * @param mapping Mapping to be used for figuring out segment chaining
+     */
+    public void advanceKinematics(float delta, SegmentMapping mapping) {
+        kinematicVehicles.clear();
+        kinematicAssociations.clear();
+        kinematicPrefabs.clear();
+        for (EntityRef vehicleEntity : followers) {
+            PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+            if (vehicle == null || !vehicle.kinematics || vehicle.segmentMeta == null
+                || vehicle.segmentMeta.association == null) {
+                continue;
+            }
+            if (kinematicVehicles.size() == kinematicDeltas.length) {
+                kinematicDeltas = Arrays.copyOf(kinematicDeltas, kinematicDeltas.length * 2);
+                kinematicSpeeds = Arrays.copyOf(kinematicSpeeds, kinematicSpeeds.length * 2);
+            }
+            kinematicSpeeds[kinematicVehicles.size()] = vehicle.speed;
+            vehicle.speed = limitSpeed(vehicle, vehicle.speed + vehicle.acceleration * delta, delta);
+            kinematicDeltas[kinematicVehicles.size()] = vehicle.speed * delta;
+            kinematicVehicles.add(vehicleEntity);
+            kinematicAssociations.add(vehicle.segmentMeta.association);
+            kinematicPrefabs.add(vehicle.segmentMeta.prefab);
+        }
+        sinceKinematicsSave += delta;
+        boolean saveAll = sinceKinematicsSave >= kinematicsSaveInterval;
+        if (saveAll) {
+            sinceKinematicsSave = 0;
+        }
+        if (kinematicVehicles.isEmpty()) {
+            return;
+        }
+        boolean[] results = moveAll(kinematicVehicles, Arrays.copyOf(kinematicDeltas, kinematicVehicles.size()), mapping);
+        for (int i = 0; i < results.length; i++) {
+            EntityRef vehicleEntity = kinematicVehicles.get(i);
+            PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+            // a follower held at the end of its path by its acceleration stops again on every pass, it is only saved once
+            boolean stopped = !results[i] && kinematicSpeeds[i] != 0;
+            if (!results[i]) {
+                vehicle.speed = 0;
+            }
+            if (saveAll || stopped || vehicle.segmentMeta.association != kinematicAssociations.get(i)
+                || vehicle.segmentMeta.prefab != kinematicPrefabs.get(i)) {
+                vehicleEntity.saveComponent(vehicle);
+            }
+        }
+    }
+
+    /**
+     * @return how often kinematic followers that neither stopped nor changed segment are saved, in seconds
+     */
+    public float getKinematicsSaveInterval() {
+        return kinematicsSaveInterval;
+    }
+
+    /**
+     * Sets how often kinematic followers that neither stopped nor changed segment are saved, which is how often their
+     * moves are replicated.
+     *
+     * @param interval The interval in seconds, or 0 to save them on every move
+     */
+    public void setKinematicsSaveInterval(float interval) {
+        if (interval < 0 || !Float.isFinite(interval)) {
+            throw new IllegalArgumentException("interval must be zero or positive, was " + interval);
+        }
+        this.kinematicsSaveInterval = interval;
+    }
+
+    /**
+     * Applies the limits of the given vehicle to the speed it would have after the given time.
+     */
+    private float limitSpeed(PathFollowerComponent vehicle, float speed, float delta) {
+        if (vehicle.maxSpeed > 0) {
+            speed = Math.max(-vehicle.maxSpeed, Math.min(vehicle.maxSpeed, speed));
+        }
+        if (vehicle.maxLateralAcceleration <= 0) {
+            return speed;
+        }
+        float curvature = curvature(vehicle.segmentMeta);
+        if (curvature <= 0) {
+            return speed;
+        }
+        float limit = (float) Math.sqrt(vehicle.maxLateralAcceleration / curvature);
+        if (Math.abs(speed) <= limit) {
+            return speed;
+        }
+        float braked = limit;
+        if (vehicle.maxDeceleration > 0) {
+            braked = Math.max(limit, Math.abs(vehicle.speed) - vehicle.maxDeceleration * delta);
+        }
+        return Math.copySign(Math.min(Math.abs(speed), braked), speed);
+    }
+
+    /**
+     * Returns the duration of a fixed step.
+     *
+     * @return The duration in seconds, or 0 if fixed step mode is off
+     */
+    public float getFixedStep() {
+        return fixedStep;
+    }
+
+    /**
+     * Turns fixed step mode on or off. In fixed step mode, {@link #update(float)} runs a step every {@code fixedStep}
+     * seconds on the authority, calling the registered step listeners to move the vehicles.
+     *
+     * @param fixedStep The duration of a step in seconds, or 0 to turn fixed step mode off
+     */
+    public void setFixedStep(float fixedStep) {
+        if (fixedStep < 0 || !Float.isFinite(fixedStep)) {
+            throw new IllegalArgumentException("fixedStep must be zero or positive, was " + fixedStep);
+        }
+        this.fixedStep = fixedStep;
+        this.accumulator = 0;
+    }
+
+    /**
+     * Registers a listener called at every fixed step, after the state of the followers has been kept.
+     *
+     * @param listener The listener to add
+     */
+    public void addStepListener(StepListener listener) {
+        stepListeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to remove
+     */
+    public void removeStepListener(StepListener listener) {
+        stepListeners.remove(listener);
+    }
+
+    /**
+     * Returns how far the current frame is between the previous and the current state of the followers stepped by this
+     * system, to be passed to the interpolating queries. Remote clients receive the states of followers independently of
+     * each other, so there {@link #getInterpolationAlpha(EntityRef)} has to be used instead.
+     *
+     * @return A value from 0, at the previous state, to 1, at the current state; always 1 if fixed step mode is off or
+     *     on remote clients
+     */
+    public float getInterpolationAlpha() {
+        if (fixedStep <= 0 || !networkSystem.getMode().isAuthority()) {
+            return 1;
+        }
+        return Math.min(accumulator / fixedStep, 1);
+    }
+
+    /**
+     * Returns how far the current frame is between the previous and the current state of the given follower, to be
+     * passed to the interpolating queries. On the authority this is {@link #getInterpolationAlpha()}; on remote clients
+     * it is the time since the current state of the follower was received, relative to the fixed step.
+     *
+     * @param vehicleEntity The follower
+     * @return A value from 0, at the previous state, to 1, at the current state; always 1 if fixed step mode is off
+     */
+    public float getInterpolationAlpha(EntityRef vehicleEntity) {
+        ToDoubleFunction<EntityRef> times = receiveTimes;
+        if (fixedStep <= 0 || times == null || networkSystem.getMode().isAuthority()) {
+            return getInterpolationAlpha();
+        }
+        double receivedAt = times.applyAsDouble(vehicleEntity);
+        if (Double.isNaN(receivedAt)) {
+            return 1;
+        }
+        return (float) Math.min((clock - receivedAt) / fixedStep, 1);
+    }
+
+    /**
+     * @return the time passed in updates of this system, in seconds.
+     */
+    double getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets where {@link #getInterpolationAlpha(EntityRef)} looks up when the current state of a follower was received on
+     * remote clients, in the time of {@link #getClock()}.
+     *
+     * @param receiveTimes The receive time of a follower, NaN if none was received; null when not on a remote client
+     */
+    void setReceiveTimes(ToDoubleFunction<EntityRef> receiveTimes) {
+        this.receiveTimes = receiveTimes;
+    }
+
+    /**
+     * Creates a cursor for sampling several points along the path of a vehicle in one walk. The cursor should be kept
+     * and reused by the caller.
+     *
+     * @return A new cursor
+     */
+    public PathCursor cursor() {
+        return new PathCursor(this, segmentSystem);
+    }
+
     /**
      * Returns a tangent to the path at the point the vehicle is currently at.
      *
@@ -51,6 +410,18 @@ public class PathFollowerSystem extends BaseComponentSystem {
         return vehicleTangent(vehicleEntity, 0, null);
     }
 
+    /**
+     * Stores the tangent to the path at the point the vehicle is currently at in {@code dest}.
+     *
+     * @param vehicleEntity Vehicle entity marking a point to which we want a tangent
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f vehicleTangent(EntityRef vehicleEntity, Vector3f dest) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        return tangent(vehicle.segmentMeta, dest);
+    }
+
     /**
      * Returns a tangent to the path at the point the vehicle will be after delta distance.
      *
@@ -62,17 +433,11 @@ public class PathFollowerSystem extends BaseComponentSystem {
     public Vector3f vehicleTangent(EntityRef vehicleEntity, float delta, SegmentMapping mapping) {
         PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
         if (delta == 0 || mapping == null) {
-            Segment segment = segmentCacheSystem.getSegment(vehicle.segmentMeta.prefab);
-            int index = segment.index(vehicle.segmentMeta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(vehicle.segmentMeta);
-            return segment.tangent(index, segment.getSegmentPosition(index, vehicle.segmentMeta.position), rotation);
+            return tangent(vehicle.segmentMeta, new Vector3f());
         }
-        SegmentMeta meta = new SegmentMeta(vehicle.segmentMeta);
+        SegmentMeta meta = lookAhead.set(vehicle.segmentMeta);
         if (this.segmentSystem.updateSegmentMeta(meta, delta, mapping)) {
-            Segment segment = segmentCacheSystem.getSegment(meta.prefab);
-            int index = segment.index(meta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(meta);
-            return segment.tangent(index, segment.getSegmentPosition(index, meta.position), rotation);
+            return tangent(meta, new Vector3f());
         }
         return null;
     }
@@ -87,6 +452,18 @@ public class PathFollowerSystem extends BaseComponentSystem {
         return vehiclePoint(vehicleEntity, 0, null);
     }
 
+    /**
+     * Stores the point representing current vehicle position on path in {@code dest}.
+     *
+     * @param vehicleEntity Vehicle whose position we are measuring
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f vehiclePoint(EntityRef vehicleEntity, Vector3f dest) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        return point(vehicle.segmentMeta, dest);
+    }
+
     /**
      * Returns point representing vehicle position on path the vehicle will be after delta distance.
      *
@@ -98,24 +475,84 @@ public class PathFollowerSystem extends BaseComponentSystem {
     public Vector3f vehiclePoint(EntityRef vehicleEntity, float delta, SegmentMapping mapping) {
         PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
         if (delta == 0 || mapping == null) {
-            Segment segment = segmentCacheSystem.getSegment(vehicle.segmentMeta.prefab);
-            int index = segment.index(vehicle.segmentMeta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(vehicle.segmentMeta);
-            Vector3f position = segmentSystem.segmentPosition(vehicle.segmentMeta);
-            return segment.point(index, segment.getSegmentPosition(index, vehicle.segmentMeta.position), position,
-                rotation);
-        }
-        SegmentMeta meta = new SegmentMeta(vehicle.segmentMeta);
+            return point(vehicle.segmentMeta, new Vector3f());
+        }
+        SegmentMeta meta = lookAhead.set(vehicle.segmentMeta);
         if (this.segmentSystem.updateSegmentMeta(meta, vehicle.segmentMeta.sign * delta, mapping)) {
-            Segment segment = segmentCacheSystem.getSegment(meta.prefab);
-            int index = segment.index(meta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(meta);
-            Vector3f position = segmentSystem.segmentPosition(meta);
-            return segment.point(index, segment.getSegmentPosition(index, meta.position), position, rotation);
+            return point(meta, new Vector3f());
         }
         return null;
     }
 
+    /**
+     * Stores the point between the previous and the current position of the vehicle at the given alpha in {@code dest}.
+     * While both lie on the same segment, the point is taken along the segment, otherwise on a straight line between
+     * them. Without a previous state this is the current position.
+     *
+     * @param vehicleEntity Vehicle whose position we are measuring
+     * @param alpha Where between the previous state, at 0, and the current state, at 1, to take the point
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f interpolatedVehiclePoint(EntityRef vehicleEntity, float alpha, Vector3f dest) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        SegmentMeta previous = vehicle.previousSegmentMeta;
+        SegmentMeta current = vehicle.segmentMeta;
+        if (previous == null || alpha >= 1) {
+            return point(current, dest);
+        }
+        if (sameSegment(previous, current)) {
+            SegmentMeta meta = lookAhead.set(current);
+            meta.position = org.joml.Math.lerp(previous.position, current.position, alpha);
+            return point(meta, dest);
+        }
+        point(previous, dest);
+        return dest.lerp(point(current, interpolated), alpha);
+    }
+
+    /**
+     * Stores the tangent to the path between the previous and the current position of the vehicle at the given alpha in
+     * {@code dest}, oriented like {@link #vehicleTangent(EntityRef, Vector3f)}. Across segments, the tangents of both
+     * states are blended.
+     *
+     * @param vehicleEntity Vehicle entity to which we want a tangent
+     * @param alpha Where between the previous state, at 0, and the current state, at 1, to take the tangent
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f interpolatedVehicleTangent(EntityRef vehicleEntity, float alpha, Vector3f dest) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        SegmentMeta previous = vehicle.previousSegmentMeta;
+        SegmentMeta current = vehicle.segmentMeta;
+        if (previous == null || alpha >= 1) {
+            return tangent(current, dest);
+        }
+        if (sameSegment(previous, current)) {
+            SegmentMeta meta = lookAhead.set(current);
+            meta.position = org.joml.Math.lerp(previous.position, current.position, alpha);
+            return tangent(meta, dest);
+        }
+        // blend the headings, which are continuous across segments, then turn the result back into a segment tangent
+        tangent(previous, dest).mul(previous.sign);
+        tangent(current, interpolated).mul(current.sign);
+        return dest.lerp(interpolated, alpha).normalize().mul(current.sign);
+    }
+
+    private static boolean sameSegment(SegmentMeta a, SegmentMeta b) {
+        return a.association == b.association && a.prefab == b.prefab;
+    }
+
+    /**
+     * Returns the curvature of the path at the point the vehicle is currently at.
+     *
+     * @param vehicleEntity Vehicle whose position we are measuring
+     * @return The curvature, the reciprocal of the radius of the bend, 0 on straight paths
+     */
+    public float vehicleCurvature(EntityRef vehicleEntity) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        return curvature(vehicle.segmentMeta);
+    }
+
     /**
      * Returns a normal to the path at the point the vehicle is currently at.
      *
@@ -126,6 +563,18 @@ public class PathFollowerSystem extends BaseComponentSystem {
         return this.vehicleNormal(vehicleEntity, 0, null);
     }
 
+    /**
+     * Stores the normal to the path at the point the vehicle is currently at in {@code dest}.
+     *
+     * @param vehicleEntity Vehicle entity to which we want a normal
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f vehicleNormal(EntityRef vehicleEntity, Vector3f dest) {
+        PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+        return normal(vehicle.segmentMeta, dest);
+    }
+
     /**
      * Returns a normal to the path at the point the vehicle will be at after delta distance.
      *
@@ -137,21 +586,74 @@ public class PathFollowerSystem extends BaseComponentSystem {
     public Vector3f vehicleNormal(EntityRef vehicleEntity, float delta, SegmentMapping mapping) {
         PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
         if (delta == 0 || mapping == null) {
-            Segment segment = segmentCacheSystem.getSegment(vehicle.segmentMeta.prefab);
-            int index = segment.index(vehicle.segmentMeta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(vehicle.segmentMeta);
-            return segment.normal(index, segment.getSegmentPosition(index, vehicle.segmentMeta.position), rotation);
+            return normal(vehicle.segmentMeta, new Vector3f());
         }
-        SegmentMeta meta = new SegmentMeta(vehicle.segmentMeta);
+        SegmentMeta meta = lookAhead.set(vehicle.segmentMeta);
         if (this.segmentSystem.updateSegmentMeta(meta, vehicle.segmentMeta.sign * delta, mapping)) {
-            Segment segment = segmentCacheSystem.getSegment(meta.prefab);
-            int index = segment.index(meta.position);
-            Quaternionf rotation = segmentSystem.segmentRotation(meta);
-            return segment.normal(index, segment.getSegmentPosition(index, meta.position), rotation);
+            return normal(meta, new Vector3f());
         }
         return null;
     }
 
+    Vector3f tangent(SegmentMeta meta, Vector3f dest) {
+        Segment segment = segmentCacheSystem.getSegment(meta);
+        int index = index(segment, meta);
+        segmentSystem.segmentRotation(meta.association, rotation);
+        return segment.tangent(index, segment.getSegmentPosition(index, meta.position), rotation, dest);
+    }
+
+    Vector3f point(SegmentMeta meta, Vector3f dest) {
+        Segment segment = segmentCacheSystem.getSegment(meta);
+        int index = index(segment, meta);
+        segmentSystem.segmentRotation(meta.association, rotation);
+        segmentSystem.segmentPosition(meta.association, position);
+        return segment.point(index, segment.getSegmentPosition(index, meta.position), position, rotation, dest);
+    }
+
+    float curvature(SegmentMeta meta) {
+        Segment segment = segmentCacheSystem.getSegment(meta);
+        if (segment == null) {
+            // the prefab lost its path, e.g. on a reload; there is no bend to limit the speed on
+            return 0;
+        }
+        int index = index(segment, meta);
+        return segment.curvature(index, segment.getSegmentPosition(index, meta.position));
+    }
+
+    Vector3f normal(SegmentMeta meta, Vector3f dest) {
+        Segment segment = segmentCacheSystem.getSegment(meta);
+        int index = index(segment, meta);
+        segmentSystem.segmentRotation(meta.association, rotation);
+        return segment.normal(index, segment.getSegmentPosition(index, meta.position), rotation, dest);
+    }
+
+    /**
+     * Called at every fixed step, see {@link #setFixedStep(float)}.
+     */
+    @FunctionalInterface
+    public interface StepListener {
+        /**
+         * Moves the vehicles for one step.
+         *
+         * @param step The duration of the step in seconds
+         */
+        void step(float step);
+    }
+
+    /**
+     * Resolves the subsegment index for the position stored in the given {@code SegmentMeta}, starting from and updating
+     * its index hint.
+     *
+     * @param segment Segment the meta is currently on
+     * @param meta Meta holding the position to resolve
+     * @return The subsegment index
+     */
+    private int index(Segment segment, SegmentMeta meta) {
+        int index = segment.index(meta.position, meta.getIndexHint());
+        meta.setIndexHint(index);
+        return index;
+    }
+
     /**
      * Returns whether the vehicle is valid for working with.
      *
@@ -187,15 +689,315 @@ public class PathFollowerSystem extends BaseComponentSystem {
         if (delta == 0) {
             return true;
         }
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
         EntityRef previous = vehicle.segmentMeta.association;
-        vehicle.heading = this.vehicleTangent(vehicleEntity).mul(vehicle.segmentMeta.sign);
+        Prefab previousPrefab = vehicle.segmentMeta.prefab;
+        int previousSign = vehicle.segmentMeta.sign;
+        if (vehicle.heading == null) {
+            vehicle.heading = new Vector3f();
+        }
+        tangent(vehicle.segmentMeta, vehicle.heading).mul(vehicle.segmentMeta.sign);
         boolean result = segmentSystem.updateSegmentMeta(vehicle.segmentMeta, vehicle.segmentMeta.sign * delta,
             mapping);
+        updateReplicatedState(vehicle, previous, previousPrefab, previousSign);
         if (previous != vehicle.segmentMeta.association) {
             previous.send(new OnExitSegment(vehicleEntity));
             vehicle.segmentMeta.association.send(new OnVisitSegment(vehicleEntity));
         }
+        if (timed) {
+            metrics.recordFollowerMoves(1, System.nanoTime() - start);
+        }
         return result;
     }
+
+    /**
+     * Moves several vehicles along their paths in one pass. Vehicles are moved in the order they were given, so the mapping
+     * is called in the same order as by calling {@link #move(EntityRef, float, SegmentMapping)} for each vehicle. The
+     * segment and its rotation are only resolved again when a vehicle is on another segment than the one before it, so
+     * callers passing the vehicles on the same segment next to each other save most of those lookups.
+     * {@link OnExitSegment} and {@link OnVisitSegment} are sent after all vehicles have been moved, in the order the
+     * vehicles were given.
+     *
+     * @param vehicleEntities Vehicles to be moved
+     * @param deltas Distance each vehicle is to be moved by, in the same order as {@code vehicleEntities}
+     * @param mapping Mapping to be used for figuring out segment chaining
+     * @return For each vehicle, false if end of path has been reached, true otherwise
+     */
+    public boolean[] moveAll(List<EntityRef> vehicleEntities, float[] deltas, SegmentMapping mapping) {
+        int count = vehicleEntities.size();
+        if (deltas.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " deltas, got " + deltas.length);
+        }
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        boolean[] results = new boolean[count];
+        MoveBuffers buffers = takeMoveBuffers(count);
+        try {
+            EntityRef association = null;
+            Prefab prefab = null;
+            Segment segment = null;
+            int moved = 0;
+            for (int i = 0; i < count; i++) {
+                results[i] = true;
+                if (deltas[i] == 0) {
+                    continue;
+                }
+                PathFollowerComponent vehicle = buffers.add(moved++, i, vehicleEntities.get(i));
+                SegmentMeta meta = vehicle.segmentMeta;
+                if (meta.association != association) {
+                    association = meta.association;
+                    segmentSystem.segmentRotation(association, rotation);
+                    prefab = null;
+                }
+                if (meta.prefab != prefab) {
+                    prefab = meta.prefab;
+                    segment = segmentCacheSystem.getSegment(meta);
+                }
+                if (vehicle.heading == null) {
+                    vehicle.heading = new Vector3f();
+                }
+                int index = index(segment, meta);
+                segment.tangent(index, segment.getSegmentPosition(index, meta.position), rotation, vehicle.heading)
+                    .mul(meta.sign);
+                results[i] = segmentSystem.updateSegmentMeta(meta, meta.sign * deltas[i], mapping);
+            }
+
+            finishMoves(vehicleEntities, buffers, moved);
+        } finally {
+            releaseMoveBuffers(buffers);
+        }
+        if (timed) {
+            metrics.recordFollowerMoves(count, System.nanoTime() - start);
+        }
+        return results;
+    }
+
+    /**
+     * Moves several vehicles along their paths, computing the moves within their current segments on the common fork-join
+     * pool. The segment and pose of every vehicle's current segment are resolved up front on the calling thread, so the
+     * workers only do arithmetic on those and never touch entities. Vehicles leaving their segment are then moved on to
+     * the next one on the calling thread, along with all component writes and events. The outcome is the same as calling
+     * {@link #move(EntityRef, float, SegmentMapping)} for each vehicle in order. Events are sent in the order the vehicles
+     * were given.
+     * <p>
+     * The given mapping is only called from the calling thread.
+     *
+     * @param vehicleEntities Vehicles to be moved
+     * @param deltas Distance each vehicle is to be moved by, in the same order as {@code vehicleEntities}
+     * @param mapping Mapping to be used for figuring out segment chaining
+     * @return For each vehicle, false if end of path has been reached, true otherwise
+     */
+    public boolean[] moveAllParallel(List<EntityRef> vehicleEntities, float[] deltas, SegmentMapping mapping) {
+        int count = vehicleEntities.size();
+        if (deltas.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " deltas, got " + deltas.length);
+        }
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        boolean[] results = new boolean[count];
+        MoveBuffers buffers = takeMoveBuffers(count);
+        try {
+            int moved = 0;
+            for (int i = 0; i < count; i++) {
+                results[i] = true;
+                if (deltas[i] == 0) {
+                    continue;
+                }
+                PathFollowerComponent vehicle = buffers.add(moved, i, vehicleEntities.get(i));
+                SegmentMeta meta = buffers.metas[moved].set(vehicle.segmentMeta);
+                buffers.segments[moved] = segmentCacheSystem.getSegment(meta);
+                buffers.rotations[moved] = buffers.rotation(meta.association, segmentSystem);
+                buffers.leaving[moved] = false;
+                moved++;
+            }
+
+            // only vehicles that actually move are handed to the workers
+            IntStream.range(0, moved).parallel().forEach(j -> {
+                SegmentMeta meta = buffers.metas[j];
+                Segment segment = buffers.segments[j];
+                int index = index(segment, meta);
+                segment.tangent(index, segment.getSegmentPosition(index, meta.position), buffers.rotations[j],
+                    buffers.headings[j]).mul(meta.sign);
+                // the same check updateSegmentMeta starts with; anything else needs the mapping and is left to the caller
+                float position = meta.position + meta.sign * deltas[buffers.indices[j]];
+                if (position > 0 && position < segment.maxDistance()) {
+                    meta.position = position;
+                } else {
+                    buffers.leaving[j] = true;
+                }
+            });
+
+            boolean recordHops = metrics.isEnabled();
+            for (int j = 0; j < moved; j++) {
+                int i = buffers.indices[j];
+                SegmentMeta meta = buffers.metas[j];
+                if (buffers.leaving[j]) {
+                    results[i] = segmentSystem.updateSegmentMeta(meta, meta.sign * deltas[i], mapping);
+                } else if (recordHops) {
+                    metrics.recordHops(0);
+                }
+                PathFollowerComponent vehicle = buffers.vehicles[j];
+                vehicle.segmentMeta.set(meta);
+                if (vehicle.heading == null) {
+                    vehicle.heading = new Vector3f();
+                }
+                vehicle.heading.set(buffers.headings[j]);
+            }
+            finishMoves(vehicleEntities, buffers, moved);
+        } finally {
+            releaseMoveBuffers(buffers);
+        }
+        if (timed) {
+            metrics.recordFollowerMoves(count, System.nanoTime() - start);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the scratch space for moving the given number of vehicles. Event handlers called while vehicles are moved
+     * may move vehicles themselves, so the buffers are handed out to one pass at a time and a nested pass gets its own.
+     */
+    private MoveBuffers takeMoveBuffers(int count) {
+        MoveBuffers buffers = moveBuffers != null ? moveBuffers : new MoveBuffers();
+        moveBuffers = null;
+        buffers.ensure(count);
+        return buffers;
+    }
+
+    private void releaseMoveBuffers(MoveBuffers buffers) {
+        buffers.clear();
+        moveBuffers = buffers;
+    }
+
+    /**
+     * Updates the position replicated in compact mode and, if the vehicle has changed segment since the given state, marks
+     * the segment for replication. A mark that has been replicated since the last move is cleared first.
+     */
+    private void updateReplicatedState(PathFollowerComponent vehicle, EntityRef association, Prefab prefab, int sign) {
+        if (!vehicle.compactReplication) {
+            return;
+        }
+        if (vehicle.segmentChangeSent) {
+            vehicle.segmentChanged = false;
+            vehicle.segmentChangeSent = false;
+        }
+        SegmentMeta meta = vehicle.segmentMeta;
+        vehicle.quantizedPosition = Math.round(meta.position / PathFollowerComponent.POSITION_QUANTUM);
+        if (meta.association != association || meta.prefab != prefab || meta.sign != sign) {
+            vehicle.segmentChanged = true;
+        }
+    }
+
+    /**
+     * Updates the replicated state of the first {@code moved} vehicles in the given buffers and sends
+     * {@link OnExitSegment} and {@link OnVisitSegment} for those whose segment changed, in order.
+     */
+    private void finishMoves(List<EntityRef> vehicleEntities, MoveBuffers buffers, int moved) {
+        for (int j = 0; j < moved; j++) {
+            updateReplicatedState(buffers.vehicles[j], buffers.previous[j], buffers.previousPrefabs[j],
+                buffers.previousSigns[j]);
+        }
+        for (int j = 0; j < moved; j++) {
+            PathFollowerComponent vehicle = buffers.vehicles[j];
+            if (buffers.previous[j] != vehicle.segmentMeta.association) {
+                EntityRef vehicleEntity = vehicleEntities.get(buffers.indices[j]);
+                buffers.previous[j].send(new OnExitSegment(vehicleEntity));
+                vehicle.segmentMeta.association.send(new OnVisitSegment(vehicleEntity));
+            }
+        }
+    }
+
+    /**
+     * Scratch space for moving several vehicles in one pass, indexed by the position of a vehicle among those that move.
+     * The arrays only grow and are reused by later passes.
+     */
+    private static final class MoveBuffers {
+        // the index of each moved vehicle in the list passed by the caller
+        int[] indices = new int[0];
+        PathFollowerComponent[] vehicles = new PathFollowerComponent[0];
+        // the segment each vehicle was on before the move
+        EntityRef[] previous = new EntityRef[0];
+        Prefab[] previousPrefabs = new Prefab[0];
+        int[] previousSigns = new int[0];
+        // working copies of the vehicle state for the parallel moves
+        SegmentMeta[] metas = new SegmentMeta[0];
+        Vector3f[] headings = new Vector3f[0];
+        Segment[] segments = new Segment[0];
+        Quaternionf[] rotations = new Quaternionf[0];
+        boolean[] leaving = new boolean[0];
+        // the rotation of each segment resolved in the current pass, taken from a pool of instances kept across passes
+        private final Map<EntityRef, Quaternionf> resolved = new HashMap<>();
+        private final List<Quaternionf> rotationPool = new ArrayList<>();
+        // the number of entries used by the current pass
+        private int used;
+
+        void ensure(int count) {
+            int size = indices.length;
+            if (size >= count) {
+                return;
+            }
+            int grown = Math.max(count, size * 2);
+            indices = Arrays.copyOf(indices, grown);
+            vehicles = Arrays.copyOf(vehicles, grown);
+            previous = Arrays.copyOf(previous, grown);
+            previousPrefabs = Arrays.copyOf(previousPrefabs, grown);
+            previousSigns = Arrays.copyOf(previousSigns, grown);
+            metas = Arrays.copyOf(metas, grown);
+            headings = Arrays.copyOf(headings, grown);
+            segments = Arrays.copyOf(segments, grown);
+            rotations = Arrays.copyOf(rotations, grown);
+            leaving = Arrays.copyOf(leaving, grown);
+            for (int j = size; j < grown; j++) {
+                metas[j] = new SegmentMeta();
+                headings[j] = new Vector3f();
+            }
+        }
+
+        /**
+         * Records the state of a vehicle about to be moved at the given position.
+         *
+         * @return The component of the vehicle
+         */
+        PathFollowerComponent add(int j, int index, EntityRef vehicleEntity) {
+            PathFollowerComponent vehicle = vehicleEntity.getComponent(PathFollowerComponent.class);
+            indices[j] = index;
+            vehicles[j] = vehicle;
+            previous[j] = vehicle.segmentMeta.association;
+            previousPrefabs[j] = vehicle.segmentMeta.prefab;
+            previousSigns[j] = vehicle.segmentMeta.sign;
+            used = Math.max(used, j + 1);
+            return vehicle;
+        }
+
+        Quaternionf rotation(EntityRef association, SegmentSystem segmentSystem) {
+            Quaternionf rotation = resolved.get(association);
+            if (rotation == null) {
+                if (resolved.size() == rotationPool.size()) {
+                    rotationPool.add(new Quaternionf());
+                }
+                rotation = segmentSystem.segmentRotation(association, rotationPool.get(resolved.size()));
+                resolved.put(association, rotation);
+            }
+            return rotation;
+        }
+
+        /**
+         * Drops the references held for the current pass, so entities and components are not kept alive by the buffers.
+         */
+        void clear() {
+            Arrays.fill(vehicles, 0, used, null);
+            Arrays.fill(previous, 0, used, null);
+            Arrays.fill(previousPrefabs, 0, used, null);
+            Arrays.fill(segments, 0, used, null);
+            Arrays.fill(rotations, 0, used, null);
+            for (int j = 0; j < used; j++) {
+                metas[j].association = null;
+                metas[j].prefab = null;
+            }
+            resolved.clear();
+            used = 0;
+        }
+    }
 }
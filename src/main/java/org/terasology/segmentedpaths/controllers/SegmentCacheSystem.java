@@ -15,28 +15,212 @@
  */
 package org.terasology.segmentedpaths.controllers;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.prefab.PrefabManager;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.registry.In;
 import org.terasology.engine.registry.Share;
+import org.terasology.engine.utilities.SandboxFileManager;
+import org.terasology.segmentedpaths.SegmentMeta;
 import org.terasology.segmentedpaths.components.CurvedPathComponent;
 import org.terasology.segmentedpaths.components.LinearPathComponent;
+import org.terasology.segmentedpaths.config.SegmentedPathsConfig;
 import org.terasology.segmentedpaths.segments.CurvedSegment;
 import org.terasology.segmentedpaths.segments.LinearSegment;
 import org.terasology.segmentedpaths.segments.Segment;
+import org.terasology.segmentedpaths.segments.SegmentTableFile;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Cache system for segments. Constructs, stores and supplies segments based off their prefabs.
+ * <p>
+ * Segments are keyed by their geometry rather than by prefab, so prefabs describing the same path share one segment. Each
+ * distinct geometry is given an integer handle, which is the cheapest way to look a segment up again. A geometry and its
+ * handle are released once no prefab maps to it anymore. A released handle is tagged with the number of times its slot
+ * was reused, so it only refers to another geometry again after its slot has been reused 2048 times.
+ * <p>
+ * The cache is safe to query from multiple threads and holds at most {@link #getMaximumSize()} segments, evicting the least
+ * recently used ones first; an evicted segment is rebuilt from its geometry on the next request. Lookups by prefab only
+ * use the handle the prefab was mapped to; whether the path component of a mapped prefab has changed, which is what
+ * happens when the prefab asset is reloaded, is checked every {@value #RELOAD_CHECK_INTERVAL} seconds, and the prefab is
+ * then mapped to its new geometry.
+ * <p>
+ * All path prefabs known at startup are built up front, so the first vehicle to reach a path does not pay for it. With
+ * {@link SegmentedPathsConfig#keepSegmentTables} set, the tables of curved segments are kept in the
+ * {@value #TABLE_FILE_NAME} file of the sandbox directory and read from it on the next start instead of being
+ * calculated.
  */
 @RegisterSystem(RegisterMode.ALWAYS)
 @Share(value = SegmentCacheSystem.class)
-public class SegmentCacheSystem extends BaseComponentSystem {
+public class SegmentCacheSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
 
-    //A map that stores already constructed segments with their prefab's name as the key.
-    private HashMap<String, Segment> segments = new HashMap<>();
+    /**
+     * The number of segments kept by default.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * The name of the file in the sandbox directory the precomputed segment tables are kept in.
+     */
+    public static final String TABLE_FILE_NAME = "segmentTables.bin";
+
+    /**
+     * How often the path components of mapped prefabs are checked for changes, in seconds.
+     */
+    public static final float RELOAD_CHECK_INTERVAL = 1f;
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentCacheSystem.class);
+
+    // a handle is the slot of its geometry tagged with the number of times the slot was reused, wrapping after 2048 reuses
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int REUSE_MASK = Integer.MAX_VALUE >>> SLOT_BITS;
+
+    private volatile long maximumSize = DEFAULT_MAXIMUM_SIZE;
+    // A cache that stores already constructed segments with their geometry as the key.
+    private volatile Cache<SegmentGeometry, Segment> segments = createCache(DEFAULT_MAXIMUM_SIZE);
+    // the geometry of each prefab, together with the path component it was read from
+    private final Map<Prefab, PrefabGeometry> prefabs = new ConcurrentHashMap<>();
+    // the distinct geometries mapped from prefabs, by content and by slot, and the handles to give out next; only changed
+    // while holding the lock of the system
+    private final Map<SegmentGeometry, SegmentGeometry> registered = new HashMap<>();
+    private volatile AtomicReferenceArray<SegmentGeometry> geometries = new AtomicReferenceArray<>(16);
+    private final Deque<Integer> freeHandles = new ArrayDeque<>();
+    private int slotCount;
+    private volatile int geometryCount;
+    private volatile SegmentTableFile tableFile;
+    // changes whenever a prefab may have been mapped to a different handle, see getHandle(SegmentMeta); starts above the
+    // zero a new meta carries, so the handle of every meta is resolved at least once
+    private final AtomicInteger generation = new AtomicInteger(1);
+    // time since the path components of the mapped prefabs were last checked
+    private float sinceReloadCheck;
+
+    @In
+    private PrefabManager prefabManager;
+    @In
+    private SegmentMetricsSystem metrics;
+    @In
+    private SegmentedPathsConfig config;
+    @In
+    private SandboxFileManager sandboxFileManager;
+
+    @Override
+    public void initialise() {
+        if (config != null && config.keepSegmentTables.get()) {
+            setTableFile(readTableFile());
+        }
+        precomputeSegments();
+        saveTables();
+    }
+
+    @Override
+    public void shutdown() {
+        saveTables();
+    }
+
+    @Override
+    public void update(float delta) {
+        sinceReloadCheck += delta;
+        if (sinceReloadCheck >= RELOAD_CHECK_INTERVAL) {
+            sinceReloadCheck = 0;
+            checkReloads();
+        }
+    }
+
+    /**
+     * Maps every prefab whose path component has changed since it was mapped to its new geometry, or drops it if it no
+     * longer has one. Called regularly by {@link #update(float)}.
+     */
+    public void checkReloads() {
+        for (Map.Entry<Prefab, PrefabGeometry> entry : prefabs.entrySet()) {
+            if (pathComponent(entry.getKey()) != entry.getValue().source) {
+                resolve(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Sets the table file the precomputed tables of curved segments are read from and added to, so that they only have to
+     * be calculated once. Segments already cached are not affected. Without a table file, which is the default unless
+     * {@link SegmentedPathsConfig#keepSegmentTables} is set, all tables are calculated on start.
+     *
+     * @param tableFile The table file, or null to not use one
+     */
+    public void setTableFile(SegmentTableFile tableFile) {
+        this.tableFile = tableFile;
+    }
+
+    /**
+     * Writes the table file to the {@value #TABLE_FILE_NAME} file of the sandbox directory, if a table file is set and
+     * has changed since.
+     */
+    public void saveTables() {
+        SegmentTableFile current = tableFile;
+        if (current == null || !current.isDirty() || sandboxFileManager == null) {
+            return;
+        }
+        try {
+            sandboxFileManager.writeFile(TABLE_FILE_NAME, out -> {
+                try {
+                    current.write(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not write segment table file {}", TABLE_FILE_NAME, e);
+        }
+    }
+
+    private SegmentTableFile readTableFile() {
+        SegmentTableFile[] result = {new SegmentTableFile()};
+        if (sandboxFileManager == null) {
+            return result[0];
+        }
+        try {
+            sandboxFileManager.readFile(TABLE_FILE_NAME, in -> {
+                try {
+                    result[0] = SegmentTableFile.read(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not read segment table file {}, calculating tables instead", TABLE_FILE_NAME, e);
+        }
+        return result[0];
+    }
+
+    /**
+     * Builds the segments of all prefabs carrying a {@link CurvedPathComponent} or {@link LinearPathComponent} on the
+     * common fork-join pool and stores them in the cache. Returns once all of them are built.
+     */
+    public void precomputeSegments() {
+        Set<Prefab> prefabs = new LinkedHashSet<>(prefabManager.listPrefabs(CurvedPathComponent.class));
+        prefabs.addAll(prefabManager.listPrefabs(LinearPathComponent.class));
+        prefabs.parallelStream().forEach(this::getSegment);
+    }
 
     /**
      * Gets a segment based off the given prefab. If the specified segment has already been constructed, returns it from
@@ -46,35 +230,358 @@ public class SegmentCacheSystem extends BaseComponentSystem {
      * @return A segment based on the given prefab, or null if the given prefab is missing a path-describing component.
      */
     public Segment getSegment(Prefab prefab) {
+        int handle = getHandle(prefab);
+        return handle < 0 ? null : getSegment(handle);
+    }
 
-        Segment segment = segments.get(prefab.getName());
+    /**
+     * Gets the segment of the prefab referenced by the given {@code SegmentMeta}. The handle of the prefab is kept in the
+     * meta, see {@link #getHandle(SegmentMeta)}.
+     *
+     * @param meta The meta referencing the segment.
+     * @return A segment based on the prefab of the meta, or null if the prefab is missing a path-describing component.
+     */
+    public Segment getSegment(SegmentMeta meta) {
+        int handle = getHandle(meta);
+        if (handle < 0) {
+            return null;
+        }
+        Segment segment = getSegment(handle);
+        if (segment == null) {
+            // released by another thread since the handle was cached, resolve it again on the next lookup
+            meta.setCachedHandle(handle, 0);
+            return getSegment(meta.prefab);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the handle of the prefab referenced by the given {@code SegmentMeta}. The handle is kept in the meta, so
+     * following lookups only compare the generation of the cache until the meta moves to another prefab or a prefab is
+     * mapped to another geometry.
+     *
+     * @param meta The meta referencing the segment.
+     * @return The handle, or -1 if the prefab is missing a path-describing component.
+     */
+    public int getHandle(SegmentMeta meta) {
+        int currentGeneration = generation.get();
+        int handle = meta.getCachedHandle(currentGeneration);
+        if (handle == SegmentMeta.NO_HANDLE) {
+            handle = getHandle(meta.prefab);
+            meta.setCachedHandle(handle, currentGeneration);
+        }
+        return handle;
+    }
+
+    /**
+     * Returns the handle of the geometry described by the given prefab, registering the geometry if it is new.
+     *
+     * @param prefab A prefab that describes the segment.
+     * @return The handle, or -1 if the given prefab is missing a path-describing component.
+     */
+    public int getHandle(Prefab prefab) {
+        PrefabGeometry cached = prefabs.get(prefab);
+        if (cached != null) {
+            return cached.handle;
+        }
+        PrefabGeometry resolved = resolve(prefab);
+        return resolved == null ? -1 : resolved.handle;
+    }
+
+    private PrefabGeometry resolve(Prefab prefab) {
+        Object source = pathComponent(prefab);
+        if (source == null) {
+            if (prefabs.containsKey(prefab)) {
+                invalidate(prefab);
+            }
+            return null;
+        }
+        PrefabGeometry cached = prefabs.get(prefab);
+        if (cached != null && cached.source == source) {
+            return cached;
+        }
+        return map(prefab, source);
+    }
+
+    /**
+     * Gets the segment with the given handle, constructing it from its geometry if it is not cached.
+     *
+     * @param handle A handle returned by {@link #getHandle(Prefab)}.
+     * @return The segment, or null if the handle has been released since.
+     */
+    public Segment getSegment(int handle) {
+        SegmentGeometry geometry = geometries.get(handle & SLOT_MASK);
+        if (geometry == null || geometry.handle != handle) {
+            return null;
+        }
+        Segment segment = segments.getIfPresent(geometry);
         if (segment != null) {
+            if (metrics.isEnabled()) {
+                metrics.recordCacheHit();
+            }
             return segment;
         }
 
-        if (prefab.hasComponent(CurvedPathComponent.class)) {
-            CurvedPathComponent pathComponent = prefab.getComponent(CurvedPathComponent.class);
-            if (pathComponent == null) {
-                return null;
-            }
+        // concurrent misses may build the same segment twice; both results are equivalent, so the last one simply wins
+        long start = System.nanoTime();
+        segment = geometry.build(tableFile);
+        segments.put(geometry, segment);
+        if (metrics.isEnabled()) {
+            metrics.recordCacheMiss(System.nanoTime() - start);
+        }
+        return segment;
+    }
+
+    /**
+     * @return the number of distinct geometries currently mapped from prefabs.
+     */
+    public int getGeometryCount() {
+        return geometryCount;
+    }
 
-            CurvedPathComponent.CubicBezier[] c = new CurvedPathComponent.CubicBezier[pathComponent.path.size()];
-            pathComponent.path.toArray(c);
-            segment = new CurvedSegment(c, pathComponent.binormal);
-            segments.put(prefab.getName(), segment);
-        } else if (prefab.hasComponent(LinearPathComponent.class)) {
-            LinearPathComponent pathComponent = prefab.getComponent(LinearPathComponent.class);
-            if (pathComponent == null) {
-                return null;
+    private synchronized PrefabGeometry map(Prefab prefab, Object source) {
+        PrefabGeometry cached = prefabs.get(prefab);
+        if (cached != null && cached.source == source) {
+            // mapped by another thread in the meantime
+            return cached;
+        }
+        // registered before the old geometry is released, so an unchanged geometry keeps its handle
+        PrefabGeometry mapped = new PrefabGeometry(source, register(SegmentGeometry.of(source)));
+        prefabs.put(prefab, mapped);
+        if (cached != null) {
+            release(cached.handle);
+            generation.incrementAndGet();
+        }
+        return mapped;
+    }
+
+    private int register(SegmentGeometry geometry) {
+        SegmentGeometry existing = registered.get(geometry);
+        if (existing != null) {
+            existing.references++;
+            return existing.handle;
+        }
+        int handle;
+        if (freeHandles.isEmpty()) {
+            handle = slotCount;
+            if (handle > SLOT_MASK) {
+                throw new IllegalStateException("Too many distinct segment geometries");
             }
-            LinearPathComponent.Linear[] c = new LinearPathComponent.Linear[pathComponent.path.size()];
-            pathComponent.path.toArray(c);
-            segment = new LinearSegment(c);
-            segments.put(prefab.getName(), segment);
+            if (handle == geometries.length()) {
+                AtomicReferenceArray<SegmentGeometry> grown = new AtomicReferenceArray<>(handle * 2);
+                for (int x = 0; x < handle; x++) {
+                    grown.set(x, geometries.get(x));
+                }
+                geometries = grown;
+            }
+            slotCount++;
+        } else {
+            handle = freeHandles.pop();
+        }
+        geometry.handle = handle;
+        geometry.references = 1;
+        registered.put(geometry, geometry);
+        geometries.set(handle & SLOT_MASK, geometry);
+        geometryCount++;
+        return handle;
+    }
 
+    private void release(int handle) {
+        int slot = handle & SLOT_MASK;
+        SegmentGeometry geometry = geometries.get(slot);
+        if (--geometry.references > 0) {
+            return;
         }
+        registered.remove(geometry);
+        geometries.set(slot, null);
+        freeHandles.push((((handle >>> SLOT_BITS) + 1) & REUSE_MASK) << SLOT_BITS | slot);
+        geometryCount--;
+        // a lookup racing with this may put the segment back, it then simply ages out of the cache
+        segments.invalidate(geometry);
+    }
 
-        return segment;
+    /**
+     * Drops the cached segment for the given prefab, if any. It is rebuilt on the next request.
+     *
+     * @param prefab The prefab whose segment should be dropped.
+     */
+    public synchronized void invalidate(Prefab prefab) {
+        PrefabGeometry cached = prefabs.remove(prefab);
+        if (cached != null) {
+            segments.invalidate(geometries.get(cached.handle & SLOT_MASK));
+            release(cached.handle);
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops all cached segments.
+     */
+    public synchronized void invalidateAll() {
+        for (PrefabGeometry cached : prefabs.values()) {
+            release(cached.handle);
+        }
+        prefabs.clear();
+        segments.invalidateAll();
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return the maximum number of segments held by the cache.
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Changes the maximum number of segments held by the cache. Segments already cached are carried over, up to the new
+     * bound.
+     *
+     * @param maximumSize The maximum number of segments to hold.
+     */
+    public synchronized void setMaximumSize(long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+        }
+        Cache<SegmentGeometry, Segment> resized = createCache(maximumSize);
+        resized.putAll(segments.asMap());
+        this.maximumSize = maximumSize;
+        this.segments = resized;
+    }
+
+    private static Cache<SegmentGeometry, Segment> createCache(long maximumSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    private static Object pathComponent(Prefab prefab) {
+        CurvedPathComponent curvedPathComponent = prefab.getComponent(CurvedPathComponent.class);
+        if (curvedPathComponent != null) {
+            return curvedPathComponent;
+        }
+        return prefab.getComponent(LinearPathComponent.class);
     }
 
+    /**
+     * The geometry a prefab was last mapped to, together with the path component it was read from.
+     */
+    private static final class PrefabGeometry {
+        private final Object source;
+        private final int handle;
+
+        private PrefabGeometry(Object source, int handle) {
+            this.source = source;
+            this.handle = handle;
+        }
+    }
+
+    /**
+     * The content of a path component that determines the segment built from it, flattened into an array of floats so
+     * that equal paths compare and hash equal regardless of the prefab they come from.
+     */
+    private static final class SegmentGeometry {
+        private final boolean curved;
+        // curved: x, y, z of f1 to f4 of each curve, then the binormal; linear: x, y, z of point and binormal of each point
+        private final float[] values;
+        // FNV-1a over the bits of the values, also the key of the tables in the table file
+        private final long key;
+        private final int hash;
+        // the handle while registered and the number of prefabs mapped to it, guarded by the lock of the system
+        private int handle;
+        private int references;
+
+        private SegmentGeometry(boolean curved, float[] values) {
+            this.curved = curved;
+            this.values = values;
+            long key = curved ? 0xcbf29ce484222325L : 0x84222325cbf29ce4L;
+            for (float value : values) {
+                key = (key ^ Float.floatToIntBits(value)) * 0x100000001b3L;
+            }
+            this.key = key;
+            this.hash = Long.hashCode(key);
+        }
+
+        private static SegmentGeometry of(Object source) {
+            if (source instanceof CurvedPathComponent) {
+                CurvedPathComponent pathComponent = (CurvedPathComponent) source;
+                float[] values = new float[pathComponent.path.size() * 12 + 3];
+                int offset = 0;
+                for (CurvedPathComponent.CubicBezier curve : pathComponent.path) {
+                    offset = put(values, offset, curve.f1);
+                    offset = put(values, offset, curve.f2);
+                    offset = put(values, offset, curve.f3);
+                    offset = put(values, offset, curve.f4);
+                }
+                put(values, offset, pathComponent.binormal);
+                return new SegmentGeometry(true, values);
+            }
+            LinearPathComponent pathComponent = (LinearPathComponent) source;
+            float[] values = new float[pathComponent.path.size() * 6];
+            int offset = 0;
+            for (LinearPathComponent.Linear linear : pathComponent.path) {
+                offset = put(values, offset, linear.point);
+                offset = put(values, offset, linear.binormal);
+            }
+            return new SegmentGeometry(false, values);
+        }
+
+        private static int put(float[] values, int offset, Vector3fc vector) {
+            values[offset] = vector.x();
+            values[offset + 1] = vector.y();
+            values[offset + 2] = vector.z();
+            return offset + 3;
+        }
+
+        private static Vector3f get(float[] values, int offset) {
+            return new Vector3f(values[offset], values[offset + 1], values[offset + 2]);
+        }
+
+        private Segment build(SegmentTableFile tableFile) {
+            if (curved) {
+                CurvedPathComponent.CubicBezier[] c = new CurvedPathComponent.CubicBezier[(values.length - 3) / 12];
+                for (int x = 0; x < c.length; x++) {
+                    c[x] = new CurvedPathComponent.CubicBezier();
+                    c[x].f1 = get(values, x * 12);
+                    c[x].f2 = get(values, x * 12 + 3);
+                    c[x].f3 = get(values, x * 12 + 6);
+                    c[x].f4 = get(values, x * 12 + 9);
+                }
+                Vector3f binormal = get(values, values.length - 3);
+                if (tableFile == null) {
+                    return new CurvedSegment(c, binormal);
+                }
+                CurvedSegment segment = tableFile.load(key, c, binormal);
+                if (segment == null) {
+                    segment = new CurvedSegment(c, binormal);
+                    tableFile.add(key, segment);
+                }
+                return segment;
+            }
+            LinearPathComponent.Linear[] c = new LinearPathComponent.Linear[values.length / 6];
+            for (int x = 0; x < c.length; x++) {
+                c[x] = new LinearPathComponent.Linear();
+                c[x].point = get(values, x * 6);
+                c[x].binormal = get(values, x * 6 + 3);
+            }
+            return new LinearSegment(c);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SegmentGeometry)) {
+                return false;
+            }
+            SegmentGeometry other = (SegmentGeometry) o;
+            return hash == other.hash && curved == other.curved && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connectivity graph between placed segment instances. Each edge records how two neighbouring segments are joined, so a
+ * follower crossing from one to the other does not have to compare their endpoints again.
+ * <p>
+ * Edges are stored on both of their ends, which lets {@link #remove(EntityRef)} detach a segment from all its neighbours
+ * when it is moved or removed. An edge is tied to the geometry handles of the two segments, see
+ * {@link SegmentCacheSystem#getHandle}, so it survives the segments being evicted from the cache and rebuilt, and is
+ * ignored once either entity has been given a different geometry. Each pair of entities keeps only its latest edge, so
+ * such outdated edges are replaced rather than piling up.
+ */
+final class SegmentJointGraph {
+
+    private final Map<EntityRef, Joint[]> joints = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the recorded match between two segment instances.
+     *
+     * @param from The segment entity being left
+     * @param fromHandle The geometry handle of the segment being left
+     * @param to The segment entity being entered
+     * @param toHandle The geometry handle of the segment being entered
+     * @return The recorded match, or null if the pair has not been recorded
+     */
+    SegmentSystem.JointMatch get(EntityRef from, int fromHandle, EntityRef to, int toHandle) {
+        Joint[] edges = joints.get(from);
+        if (edges == null) {
+            return null;
+        }
+        for (Joint joint : edges) {
+            if (joint.handle == fromHandle && joint.otherHandle == toHandle && joint.other.equals(to)) {
+                return joint.match;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the match between two segment instances, along with the reverse edge. Replaces any edge recorded earlier
+     * between the two entities.
+     *
+     * @param from The segment entity being left
+     * @param fromHandle The geometry handle of the segment being left
+     * @param to The segment entity being entered
+     * @param toHandle The geometry handle of the segment being entered
+     * @param match How the end of {@code from} meets the end of {@code to}
+     */
+    void put(EntityRef from, int fromHandle, EntityRef to, int toHandle, SegmentSystem.JointMatch match) {
+        add(from, new Joint(fromHandle, to, toHandle, match));
+        add(to, new Joint(toHandle, from, fromHandle, reverse(match)));
+    }
+
+    /**
+     * Removes the given segment entity and all edges leading to it.
+     *
+     * @param entity The segment entity to detach
+     */
+    void remove(EntityRef entity) {
+        Joint[] edges = joints.remove(entity);
+        if (edges == null) {
+            return;
+        }
+        for (Joint joint : edges) {
+            joints.computeIfPresent(joint.other, (key, other) -> filter(other, entity));
+        }
+    }
+
+    private void add(EntityRef entity, Joint joint) {
+        joints.merge(entity, new Joint[]{joint}, (edges, added) -> {
+            Joint[] result = filter(edges, joint.other);
+            result = result == null ? new Joint[1] : Arrays.copyOf(result, result.length + 1);
+            result[result.length - 1] = joint;
+            return result;
+        });
+    }
+
+    /**
+     * Copies {@code edges} without the ones leading to {@code other}. Returns null if nothing is left.
+     */
+    private static Joint[] filter(Joint[] edges, EntityRef other) {
+        Joint[] result = new Joint[edges.length];
+        int count = 0;
+        for (Joint joint : edges) {
+            if (!joint.other.equals(other)) {
+                result[count++] = joint;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(result, count);
+    }
+
+    private static SegmentSystem.JointMatch reverse(SegmentSystem.JointMatch match) {
+        switch (match) {
+            case Start_End:
+                return SegmentSystem.JointMatch.End_Start;
+            case End_Start:
+                return SegmentSystem.JointMatch.Start_End;
+            default:
+                return match;
+        }
+    }
+
+    /**
+     * An edge from a segment to one of its neighbours.
+     */
+    private static final class Joint {
+        private final int handle;
+        private final EntityRef other;
+        private final int otherHandle;
+        private final SegmentSystem.JointMatch match;
+
+        private Joint(int handle, EntityRef other, int otherHandle, SegmentSystem.JointMatch match) {
+            this.handle = handle;
+            this.other = other;
+            this.otherHandle = otherHandle;
+            this.match = match;
+        }
+    }
+}
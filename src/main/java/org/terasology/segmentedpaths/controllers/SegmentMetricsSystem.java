@@ -0,0 +1,254 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.registry.Share;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects counters for the path following hot paths: segment cache hits and misses, segment hops per
+ * {@link SegmentSystem#updateSegmentMeta} call, nearest position query latency and follower movement throughput.
+ * <p>
+ * Nearest queries are measured where the systems of this module run them: single segment queries in
+ * {@link SegmentSystem#nearestSegmentPosition} and spatial index queries in {@link SegmentSystem#nearestSegment}. Calls
+ * made directly on a {@code Segment} are not seen by the metrics.
+ * <p>
+ * Recording is off by default. While disabled, the instrumented code only pays for reading {@link #isEnabled()}. All
+ * counters are safe to update from multiple threads.
+ */
+@RegisterSystem(RegisterMode.ALWAYS)
+@Share(value = SegmentMetricsSystem.class)
+public class SegmentMetricsSystem extends BaseComponentSystem {
+
+    /**
+     * Upper bounds (inclusive) of the hop count histogram buckets; the last bucket holds everything above.
+     */
+    private static final int[] HOP_BUCKET_LIMITS = {0, 1, 2, 3, 7, 15};
+
+    private volatile boolean enabled;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheBuildNanos = new LongAdder();
+
+    private final LongAdder[] hopCounts = new LongAdder[HOP_BUCKET_LIMITS.length + 1];
+
+    private final LongAdder nearestQueries = new LongAdder();
+    private final LongAdder nearestNanos = new LongAdder();
+    private final LongAccumulator nearestMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder indexQueries = new LongAdder();
+    private final LongAdder indexNanos = new LongAdder();
+    private final LongAccumulator indexMaxNanos = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder followerMoves = new LongAdder();
+    private final LongAdder followerMoveNanos = new LongAdder();
+
+    public SegmentMetricsSystem() {
+        for (int x = 0; x < hopCounts.length; x++) {
+            hopCounts[x] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return whether metrics are currently being recorded.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. Counters keep their values while recording is off.
+     *
+     * @param enabled Whether metrics should be recorded
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void reset() {
+        cacheHits.reset();
+        cacheMisses.reset();
+        cacheBuildNanos.reset();
+        for (LongAdder hopCount : hopCounts) {
+            hopCount.reset();
+        }
+        nearestQueries.reset();
+        nearestNanos.reset();
+        nearestMaxNanos.reset();
+        indexQueries.reset();
+        indexNanos.reset();
+        indexMaxNanos.reset();
+        followerMoves.reset();
+        followerMoveNanos.reset();
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCacheMiss(long buildNanos) {
+        cacheMisses.increment();
+        cacheBuildNanos.add(buildNanos);
+    }
+
+    void recordHops(int hops) {
+        int bucket = 0;
+        while (bucket < HOP_BUCKET_LIMITS.length && hops > HOP_BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        hopCounts[bucket].increment();
+    }
+
+    void recordNearestQuery(long nanos) {
+        nearestQueries.increment();
+        nearestNanos.add(nanos);
+        nearestMaxNanos.accumulate(nanos);
+    }
+
+    void recordIndexQuery(long nanos) {
+        indexQueries.increment();
+        indexNanos.add(nanos);
+        indexMaxNanos.accumulate(nanos);
+    }
+
+    void recordFollowerMoves(int followers, long nanos) {
+        followerMoves.add(followers);
+        followerMoveNanos.add(nanos);
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the total time spent building segments on cache misses, in nanoseconds.
+     */
+    public long getCacheBuildNanos() {
+        return cacheBuildNanos.sum();
+    }
+
+    /**
+     * Returns the number of {@link SegmentSystem#updateSegmentMeta} calls that crossed a number of segment boundaries
+     * falling into each histogram bucket. The buckets are 0, 1, 2, 3, 4-7, 8-15 and 16 or more hops.
+     *
+     * @return the count per bucket
+     */
+    public long[] getHopHistogram() {
+        long[] result = new long[hopCounts.length];
+        for (int x = 0; x < hopCounts.length; x++) {
+            result[x] = hopCounts[x].sum();
+        }
+        return result;
+    }
+
+    public long getNearestQueries() {
+        return nearestQueries.sum();
+    }
+
+    /**
+     * @return the total time spent in nearest segment position queries, in nanoseconds.
+     */
+    public long getNearestNanos() {
+        return nearestNanos.sum();
+    }
+
+    /**
+     * @return the longest nearest segment position query, in nanoseconds.
+     */
+    public long getNearestMaxNanos() {
+        return nearestMaxNanos.get();
+    }
+
+    public long getIndexQueries() {
+        return indexQueries.sum();
+    }
+
+    /**
+     * @return the total time spent in nearest segment queries on the spatial index, in nanoseconds.
+     */
+    public long getIndexNanos() {
+        return indexNanos.sum();
+    }
+
+    /**
+     * @return the longest nearest segment query on the spatial index, in nanoseconds.
+     */
+    public long getIndexMaxNanos() {
+        return indexMaxNanos.get();
+    }
+
+    /**
+     * @return the number of followers moved by {@link PathFollowerSystem}.
+     */
+    public long getFollowerMoves() {
+        return followerMoves.sum();
+    }
+
+    /**
+     * @return the total time spent moving followers, in nanoseconds.
+     */
+    public long getFollowerMoveNanos() {
+        return followerMoveNanos.sum();
+    }
+
+    @Command(shortDescription = "Shows or controls path following metrics",
+            helpText = "Without an argument prints the collected metrics. Use 'on' or 'off' to control recording, "
+                    + "'reset' to clear the counters.",
+            requiredPermission = PermissionManager.DEBUG_PERMISSION)
+    public String segmentMetrics(@CommandParam(value = "action", required = false) String action) {
+        if ("on".equals(action)) {
+            setEnabled(true);
+            return "Segment metrics enabled";
+        }
+        if ("off".equals(action)) {
+            setEnabled(false);
+            return "Segment metrics disabled";
+        }
+        if ("reset".equals(action)) {
+            reset();
+            return "Segment metrics reset";
+        }
+        return getReport();
+    }
+
+    /**
+     * @return a human readable summary of all counters.
+     */
+    public String getReport() {
+        long hits = getCacheHits();
+        long misses = getCacheMisses();
+        long nearest = getNearestQueries();
+        long indexed = getIndexQueries();
+        long moves = getFollowerMoves();
+        long[] hops = getHopHistogram();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("Recording: ").append(enabled ? "on" : "off").append('\n');
+        builder.append(String.format("Segment cache: %d hits, %d misses, %.3f ms building%n", hits, misses,
+                getCacheBuildNanos() / 1e6));
+        builder.append(String.format("Hops per update: 0: %d, 1: %d, 2: %d, 3: %d, 4-7: %d, 8-15: %d, 16+: %d%n",
+                hops[0], hops[1], hops[2], hops[3], hops[4], hops[5], hops[6]));
+        builder.append(String.format("Nearest position: %d queries, %.3f us average, %.3f us max%n", nearest,
+                nearest == 0 ? 0 : getNearestNanos() / 1e3 / nearest, getNearestMaxNanos() / 1e3));
+        builder.append(String.format("Nearest segment: %d queries, %.3f us average, %.3f us max%n", indexed,
+                indexed == 0 ? 0 : getIndexNanos() / 1e3 / indexed, getIndexMaxNanos() / 1e3));
+        builder.append(String.format("Follower moves: %d, %.3f us average", moves,
+                moves == 0 ? 0 : getFollowerMoveNanos() / 1e3 / moves));
+        return builder.toString();
+    }
+}
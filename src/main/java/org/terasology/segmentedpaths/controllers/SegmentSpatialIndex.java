@@ -0,0 +1,219 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.joml.Math;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.segmentedpaths.SegmentMeta;
+import org.terasology.segmentedpaths.segments.Segment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over placed segment instances, with one cell per world chunk. Each instance is stored with its world space
+ * bounding box in every cell that box overlaps, so a nearest segment query only has to look at the instances in the cells
+ * around the queried point.
+ */
+final class SegmentSpatialIndex {
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<EntityRef, List<Entry>> entries = new HashMap<>();
+    private final Vector3f point = new Vector3f();
+
+    /**
+     * Returns whether any segment of the given entity is in the index.
+     */
+    synchronized boolean contains(EntityRef entity) {
+        return entries.containsKey(entity);
+    }
+
+    /**
+     * Returns the number of segment instances in the index.
+     */
+    synchronized int size() {
+        int size = 0;
+        for (List<Entry> list : entries.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds one segment of a placed entity to the index.
+     *
+     * @param entity The segment entity
+     * @param prefab The prefab describing the segment
+     * @param segment The geometry of the segment
+     * @param position The world position of the segment
+     * @param rotation The world rotation of the segment
+     */
+    synchronized void add(EntityRef entity, Prefab prefab, Segment segment, Vector3fc position, Quaternionfc rotation) {
+        Entry entry = new Entry(entity, prefab, segment, position, rotation);
+        entries.computeIfAbsent(entity, key -> new ArrayList<>(1)).add(entry);
+        for (int x = cell(entry.min.x, Chunks.SIZE_X); x <= cell(entry.max.x, Chunks.SIZE_X); x++) {
+            for (int y = cell(entry.min.y, Chunks.SIZE_Y); y <= cell(entry.max.y, Chunks.SIZE_Y); y++) {
+                for (int z = cell(entry.min.z, Chunks.SIZE_Z); z <= cell(entry.max.z, Chunks.SIZE_Z); z++) {
+                    cells.computeIfAbsent(key(x, y, z), key -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all segments of the given entity from the index.
+     *
+     * @return Whether the entity was in the index
+     */
+    synchronized boolean remove(EntityRef entity) {
+        List<Entry> removed = entries.remove(entity);
+        if (removed == null) {
+            return false;
+        }
+        for (Entry entry : removed) {
+            for (int x = cell(entry.min.x, Chunks.SIZE_X); x <= cell(entry.max.x, Chunks.SIZE_X); x++) {
+                for (int y = cell(entry.min.y, Chunks.SIZE_Y); y <= cell(entry.max.y, Chunks.SIZE_Y); y++) {
+                    for (int z = cell(entry.min.z, Chunks.SIZE_Z); z <= cell(entry.max.z, Chunks.SIZE_Z); z++) {
+                        long key = key(x, y, z);
+                        List<Entry> cell = cells.get(key);
+                        cell.remove(entry);
+                        if (cell.isEmpty()) {
+                            cells.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the point on any indexed segment closest to the given point, within the given radius.
+     *
+     * @param pos The point to search around
+     * @param radius The maximum distance of the returned point
+     * @param dest Will hold the segment and position on it of the closest point, if one is found
+     * @return Whether a point within the radius was found
+     */
+    synchronized boolean nearest(Vector3f pos, float radius, SegmentMeta dest) {
+        float minX = pos.x - radius;
+        float minY = pos.y - radius;
+        float minZ = pos.z - radius;
+        int fromX = cell(minX, Chunks.SIZE_X);
+        int fromY = cell(minY, Chunks.SIZE_Y);
+        int fromZ = cell(minZ, Chunks.SIZE_Z);
+        int toX = cell(pos.x + radius, Chunks.SIZE_X);
+        int toY = cell(pos.y + radius, Chunks.SIZE_Y);
+        int toZ = cell(pos.z + radius, Chunks.SIZE_Z);
+
+        Nearest nearest = new Nearest(radius * radius);
+        long range = (long) (toX - fromX + 1) * (toY - fromY + 1) * (toZ - fromZ + 1);
+        if (range > cells.size()) {
+            // the radius covers more cells than are occupied, so walking the occupied ones is cheaper
+            for (List<Entry> list : entries.values()) {
+                for (Entry entry : list) {
+                    test(entry, pos, nearest);
+                }
+            }
+        } else {
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = fromY; y <= toY; y++) {
+                    for (int z = fromZ; z <= toZ; z++) {
+                        List<Entry> cell = cells.get(key(x, y, z));
+                        if (cell == null) {
+                            continue;
+                        }
+                        for (Entry entry : cell) {
+                            // an entry spanning several cells is only tested in the first of them the query overlaps
+                            if (cell(Math.max(entry.min.x, minX), Chunks.SIZE_X) == x
+                                && cell(Math.max(entry.min.y, minY), Chunks.SIZE_Y) == y
+                                && cell(Math.max(entry.min.z, minZ), Chunks.SIZE_Z) == z) {
+                                test(entry, pos, nearest);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (nearest.entry == null) {
+            return false;
+        }
+        dest.association = nearest.entry.entity;
+        dest.prefab = nearest.entry.prefab;
+        dest.position = nearest.position;
+        dest.sign = 1;
+        dest.setIndexHint(0);
+        return true;
+    }
+
+    private void test(Entry entry, Vector3f pos, Nearest nearest) {
+        float dx = Math.max(Math.max(entry.min.x - pos.x, 0), pos.x - entry.max.x);
+        float dy = Math.max(Math.max(entry.min.y - pos.y, 0), pos.y - entry.max.y);
+        float dz = Math.max(Math.max(entry.min.z - pos.z, 0), pos.z - entry.max.z);
+        if (dx * dx + dy * dy + dz * dz > nearest.distance) {
+            return;
+        }
+        Segment segment = entry.segment;
+        float position = segment.nearestSegmentPosition(pos, entry.position, entry.rotation);
+        int index = segment.index(position);
+        segment.point(index, segment.getSegmentPosition(index, position), entry.position, entry.rotation, point);
+        float distance = point.distanceSquared(pos);
+        if (distance <= nearest.distance) {
+            nearest.distance = distance;
+            nearest.entry = entry;
+            nearest.position = position;
+        }
+    }
+
+    private static int cell(float coordinate, int size) {
+        return (int) Math.floor(coordinate / size);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    /**
+     * A segment instance together with its pose and world space bounding box.
+     */
+    private static final class Entry {
+        private final EntityRef entity;
+        private final Prefab prefab;
+        private final Segment segment;
+        private final Vector3f position;
+        private final Quaternionf rotation;
+        private final Vector3f min = new Vector3f();
+        private final Vector3f max = new Vector3f();
+
+        private Entry(EntityRef entity, Prefab prefab, Segment segment, Vector3fc position, Quaternionfc rotation) {
+            this.entity = entity;
+            this.prefab = prefab;
+            this.segment = segment;
+            this.position = new Vector3f(position);
+            this.rotation = new Quaternionf(rotation);
+            segment.bounds(position, rotation, min, max);
+        }
+    }
+
+    /**
+     * The best candidate found so far by a nearest segment query.
+     */
+    private static final class Nearest {
+        private float distance;
+        private Entry entry;
+        private float position;
+
+        private Nearest(float distance) {
+            this.distance = distance;
+        }
+    }
+}
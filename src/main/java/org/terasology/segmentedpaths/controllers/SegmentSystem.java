@@ -18,7 +18,12 @@ package org.terasology.segmentedpaths.controllers;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
@@ -26,12 +31,28 @@ import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.math.Rotation;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldComponent;
 import org.terasology.engine.world.block.BlockComponent;
 import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.chunks.ChunkProvider;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.engine.world.chunks.event.BeforeChunkUnload;
+import org.terasology.engine.world.chunks.event.OnChunkLoaded;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.segmentedpaths.SegmentMeta;
 import org.terasology.segmentedpaths.blocks.PathFamily;
+import org.terasology.segmentedpaths.components.PathDescriptorComponent;
 import org.terasology.segmentedpaths.segments.Segment;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 @RegisterSystem(RegisterMode.ALWAYS)
 @Share(value = SegmentSystem.class)
 public class SegmentSystem extends BaseComponentSystem {
@@ -53,6 +74,130 @@ public class SegmentSystem extends BaseComponentSystem {
 
     @In
     private SegmentCacheSystem segmentCacheSystem;
+    @In
+    private SegmentMetricsSystem metrics;
+    @In
+    private ChunkProvider chunkProvider;
+    @In
+    private BlockEntityRegistry blockEntityRegistry;
+
+    // resolved poses of segment entities whose placement only changes through their own components
+    private final Map<EntityRef, Pose> poses = new ConcurrentHashMap<>();
+    // joint matches between segments with cached poses, dropped together with the poses
+    private final SegmentJointGraph joints = new SegmentJointGraph();
+    // world space bounds of placed segments, for finding the segment closest to a point
+    private final SegmentSpatialIndex index = new SegmentSpatialIndex();
+    // segment entities waiting to be added to the index, which happens lazily on the next query
+    private final Set<EntityRef> unindexed = ConcurrentHashMap.newKeySet();
+    // block segment entities with path state, by the chunk they are in, so the state is built and dropped with the chunk;
+    // only updated by event handlers and pose lookups on the game thread
+    private final Map<Vector3i, Set<EntityRef>> chunkEntities = new HashMap<>();
+
+    @ReceiveEvent(components = PathDescriptorComponent.class)
+    public void onPathActivated(OnActivatedComponent event, EntityRef entity) {
+        unindexed.add(entity);
+        trackChunk(entity);
+    }
+
+    @ReceiveEvent(components = PathDescriptorComponent.class)
+    public void onPathChanged(OnChangedComponent event, EntityRef entity) {
+        index.remove(entity);
+        unindexed.add(entity);
+    }
+
+    @ReceiveEvent(components = PathDescriptorComponent.class)
+    public void onPathDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        index.remove(entity);
+        unindexed.remove(entity);
+    }
+
+    @ReceiveEvent(components = BlockComponent.class)
+    public void onBlockChanged(OnChangedComponent event, EntityRef entity) {
+        invalidatePose(entity);
+    }
+
+    @ReceiveEvent(components = BlockComponent.class)
+    public void onBlockDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        invalidatePose(entity);
+        untrackChunk(entity);
+    }
+
+    @ReceiveEvent(components = LocationComponent.class)
+    public void onLocationChanged(OnChangedComponent event, EntityRef entity) {
+        invalidatePose(entity);
+    }
+
+    @ReceiveEvent(components = LocationComponent.class)
+    public void onLocationDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        invalidatePose(entity);
+    }
+
+    /**
+     * Resolves the poses of the path blocks in a chunk that has just been loaded and adds them to the index, so the first
+     * follower to reach them does not pay for it. Other segment entities recorded for the chunk are resolved as well.
+     */
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkLoaded(OnChunkLoaded event, EntityRef worldEntity) {
+        Vector3ic chunkPos = event.getChunkPos();
+        Chunk chunk = chunkProvider.getChunk(chunkPos);
+        if (chunk != null) {
+            Vector3i blockPos = new Vector3i();
+            for (int x = 0; x < Chunks.SIZE_X; x++) {
+                for (int y = 0; y < Chunks.SIZE_Y; y++) {
+                    for (int z = 0; z < Chunks.SIZE_Z; z++) {
+                        if (!(chunk.getBlock(x, y, z).getBlockFamily() instanceof PathFamily)) {
+                            continue;
+                        }
+                        blockPos.set(chunkPos.x() * Chunks.SIZE_X + x, chunkPos.y() * Chunks.SIZE_Y + y,
+                            chunkPos.z() * Chunks.SIZE_Z + z);
+                        EntityRef entity = blockEntityRegistry.getBlockEntityAt(blockPos);
+                        if (entity.hasComponent(PathDescriptorComponent.class)) {
+                            pose(entity);
+                            unindexed.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+        Set<EntityRef> entities = chunkEntities.get(new Vector3i(chunkPos));
+        if (entities != null) {
+            for (EntityRef entity : entities) {
+                pose(entity);
+            }
+        }
+        updateIndex();
+    }
+
+    /**
+     * Drops the poses, joints and index entries of all segment entities in a chunk that is about to be unloaded.
+     */
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkUnloading(BeforeChunkUnload event, EntityRef worldEntity) {
+        Set<EntityRef> entities = chunkEntities.remove(new Vector3i(event.getChunkPos()));
+        if (entities == null) {
+            return;
+        }
+        for (EntityRef entity : entities) {
+            poses.remove(entity);
+            joints.remove(entity);
+            index.remove(entity);
+            unindexed.remove(entity);
+        }
+    }
+
+    /**
+     * Drops the cached position and rotation of the given segment entity, if any, along with the joints recorded
+     * between it and its neighbours. The entity is indexed again with its new pose on the next nearest segment query.
+     *
+     * @param entity Segment whose pose should be resolved again on the next query
+     */
+    public void invalidatePose(EntityRef entity) {
+        poses.remove(entity);
+        joints.remove(entity);
+        if (index.remove(entity)) {
+            unindexed.add(entity);
+        }
+    }
 
     /**
      * Returns by which type of connection from {@link JointMatch} are two segments connected.
@@ -98,20 +243,22 @@ public class SegmentSystem extends BaseComponentSystem {
      */
     public boolean updateSegmentMeta(SegmentMeta segmentMeta, float delta, SegmentMapping mapping) {
 
-        Segment segment = segmentCacheSystem.getSegment(segmentMeta.prefab);
+        Segment segment = segmentCacheSystem.getSegment(segmentMeta);
+        int handle = segmentCacheSystem.getHandle(segmentMeta);
         float deltaTemp = delta;
+        int hops = 0;
         while (true) {
             if (Math.abs(deltaTemp) < Float.MIN_VALUE) {
-                return true;
+                return recordHops(true, hops);
             }
             if (!org.joml.Math.isFinite(deltaTemp)) {
-                return false;
+                return recordHops(false, hops);
             }
 
 
             if (deltaTemp + segmentMeta.position > 0 && deltaTemp + segmentMeta.position < segment.maxDistance()) {
                 segmentMeta.position = deltaTemp + segmentMeta.position;
-                return true;
+                return recordHops(true, hops);
             }
             SegmentMapping.MappingResult mappingResult = mapping.nextSegment(segmentMeta, deltaTemp < 0 ?
                 SegmentMapping.SegmentEnd.START : SegmentMapping.SegmentEnd.END);
@@ -122,16 +269,16 @@ public class SegmentSystem extends BaseComponentSystem {
             }
 
             if (mappingResult == null) {
-                return false;
+                return recordHops(false, hops);
             }
-            Segment nextSegment = segmentCacheSystem.getSegment(mappingResult.prefab);
-
-            Vector3f p1 = this.segmentPosition(segmentMeta);
-            Quaternionf q1 = this.segmentRotation(segmentMeta);
-            Vector3f p2 = this.segmentPosition(mappingResult.entity);
-            Quaternionf q2 = this.segmentRotation(mappingResult.entity);
+            int nextHandle = segmentCacheSystem.getHandle(mappingResult.prefab);
+            if (nextHandle < 0) {
+                return recordHops(false, hops);
+            }
+            Segment nextSegment = segmentCacheSystem.getSegment(nextHandle);
 
-            JointMatch match = this.segmentMatch(segment, p1, q1, nextSegment, p2, q2);
+            JointMatch match = jointMatch(segmentMeta.association, handle, segment, mappingResult.entity, nextHandle,
+                nextSegment);
             switch (match) {
                 case Start_End:
                     segmentMeta.position = nextSegment.maxDistance();
@@ -150,14 +297,108 @@ public class SegmentSystem extends BaseComponentSystem {
                     segmentMeta.position = 0;
                     break;
                 default:
-                    return false;
+                    return recordHops(false, hops);
             }
             segmentMeta.prefab = mappingResult.prefab;
             segmentMeta.association = mappingResult.entity;
             segment = nextSegment;
+            handle = nextHandle;
+            hops++;
+        }
+    }
+
+    private boolean recordHops(boolean result, int hops) {
+        if (metrics.isEnabled()) {
+            metrics.recordHops(hops);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the segment position on the given segment instance closest to the given point.
+     *
+     * @param pos The point to which the returned segment point is closest
+     * @param prefab The prefab describing the segment
+     * @param entity The segment entity, providing position and rotation
+     * @return The segment position of the closest point
+     */
+    public float nearestSegmentPosition(Vector3f pos, Prefab prefab, EntityRef entity) {
+        Segment segment = segmentCacheSystem.getSegment(prefab);
+        Pose pose = pose(entity);
+        if (!metrics.isEnabled()) {
+            return segment.nearestSegmentPosition(pos, pose.position, pose.rotation);
+        }
+        long start = System.nanoTime();
+        float result = segment.nearestSegmentPosition(pos, pose.position, pose.rotation);
+        metrics.recordNearestQuery(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Finds the placed segment closest to the given point. Segments are those of entities carrying a
+     * {@link PathDescriptorComponent}, looked up in a grid of their world space bounds, so only segments near the point
+     * are tested. Segments attached to a parent entity are not indexed, as their pose changes whenever the parent moves.
+     *
+     * @param pos The point to search around
+     * @param radius The maximum distance between the point and the segment
+     * @return The segment entity, its prefab and the segment position of the closest point, or null if no segment lies
+     *     within the radius
+     */
+    public SegmentMeta nearestSegment(Vector3f pos, float radius) {
+        updateIndex();
+        SegmentMeta result = new SegmentMeta();
+        if (!metrics.isEnabled()) {
+            return index.nearest(pos, radius, result) ? result : null;
+        }
+        long start = System.nanoTime();
+        boolean found = index.nearest(pos, radius, result);
+        metrics.recordIndexQuery(System.nanoTime() - start);
+        return found ? result : null;
+    }
+
+    private void updateIndex() {
+        Iterator<EntityRef> iterator = unindexed.iterator();
+        while (iterator.hasNext()) {
+            EntityRef entity = iterator.next();
+            iterator.remove();
+            if (!isPoseCacheable(entity) || index.contains(entity)) {
+                continue;
+            }
+            PathDescriptorComponent descriptor = entity.getComponent(PathDescriptorComponent.class);
+            if (descriptor == null || descriptor.descriptors == null) {
+                continue;
+            }
+            Pose pose = pose(entity);
+            for (Prefab prefab : descriptor.descriptors) {
+                Segment segment = segmentCacheSystem.getSegment(prefab);
+                if (segment != null) {
+                    index.add(entity, prefab, segment, pose.position, pose.rotation);
+                }
+            }
         }
     }
 
+    /**
+     * Returns how the given segment instances are joined, looking the pair up in the joint graph before falling back to
+     * comparing their endpoints.
+     */
+    private JointMatch jointMatch(EntityRef current, int currentHandle, Segment currentSegment, EntityRef next,
+                                  int nextHandle, Segment nextSegment) {
+        JointMatch match = joints.get(current, currentHandle, next, nextHandle);
+        if (match != null) {
+            return match;
+        }
+        Pose currentPose = pose(current);
+        Pose nextPose = pose(next);
+        match = this.segmentMatch(currentSegment, currentPose.position, currentPose.rotation, nextSegment,
+            nextPose.position, nextPose.rotation);
+        // only record joints whose ends both have cached poses, those are the ones invalidated when a segment moves
+        if (poses.containsKey(current) && poses.containsKey(next)) {
+            joints.put(current, currentHandle, next, nextHandle, match);
+        }
+        return match;
+    }
+
     /**
      * Returns a position of segment referenced by given {@code SegmentMeta}.
      *
@@ -175,14 +416,18 @@ public class SegmentSystem extends BaseComponentSystem {
      * @return Position of the segment
      */
     public Vector3f segmentPosition(EntityRef entity) {
-        if (entity.hasComponent(BlockComponent.class)) {
-            BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
-            return new Vector3f(blockComponent.getPosition(new Vector3i()));
-        }
-        if (entity.hasComponent(LocationComponent.class)) {
-            return entity.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
-        }
-        return new Vector3f();
+        return segmentPosition(entity, new Vector3f());
+    }
+
+    /**
+     * Stores the position of segment referenced by given {@code EntityRef} in {@code dest}.
+     *
+     * @param entity Segment we want to get position of
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Vector3f segmentPosition(EntityRef entity, Vector3f dest) {
+        return dest.set(pose(entity).position);
     }
 
     /**
@@ -202,6 +447,90 @@ public class SegmentSystem extends BaseComponentSystem {
      * @return Rotation of the segment
      */
     public Quaternionf segmentRotation(EntityRef entity) {
+        return segmentRotation(entity, new Quaternionf());
+    }
+
+    /**
+     * Stores the rotation of segment referenced by given {@code EntityRef} in {@code dest}.
+     *
+     * @param entity Segment we want to get rotation of
+     * @param dest Will hold the result
+     * @return dest
+     */
+    public Quaternionf segmentRotation(EntityRef entity, Quaternionf dest) {
+        return dest.set(pose(entity).rotation);
+    }
+
+    /**
+     * Returns the cached pose of the given segment entity, resolving it from its components on a miss. Entities attached
+     * to a parent are resolved every time, since their pose also changes when the parent moves.
+     */
+    private Pose pose(EntityRef entity) {
+        Pose pose = poses.get(entity);
+        if (pose != null) {
+            return pose;
+        }
+        pose = new Pose(resolvePosition(entity), resolveRotation(entity));
+        if (isPoseCacheable(entity)) {
+            poses.put(entity, pose);
+            trackChunk(entity);
+        }
+        return pose;
+    }
+
+    /**
+     * Records the chunk of the given block entity, so its state is dropped when the chunk is unloaded.
+     */
+    private void trackChunk(EntityRef entity) {
+        Vector3i chunk = chunkOf(entity);
+        if (chunk != null) {
+            chunkEntities.computeIfAbsent(chunk, key -> new HashSet<>()).add(entity);
+        }
+    }
+
+    private void untrackChunk(EntityRef entity) {
+        Vector3i chunk = chunkOf(entity);
+        if (chunk != null) {
+            Set<EntityRef> entities = chunkEntities.get(chunk);
+            if (entities != null && entities.remove(entity) && entities.isEmpty()) {
+                chunkEntities.remove(chunk);
+            }
+        }
+    }
+
+    private Vector3i chunkOf(EntityRef entity) {
+        BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+        if (blockComponent == null) {
+            return null;
+        }
+        Vector3i position = blockComponent.getPosition(new Vector3i());
+        return position.set(Math.floorDiv(position.x, Chunks.SIZE_X), Math.floorDiv(position.y, Chunks.SIZE_Y),
+            Math.floorDiv(position.z, Chunks.SIZE_Z));
+    }
+
+    private boolean isPoseCacheable(EntityRef entity) {
+        if (!entity.exists()) {
+            return false;
+        }
+        if (entity.hasComponent(BlockComponent.class)) {
+            return true;
+        }
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        return location != null && !location.getParent().exists();
+    }
+
+    private Vector3f resolvePosition(EntityRef entity) {
+        if (entity.hasComponent(BlockComponent.class)) {
+            BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+            return new Vector3f(blockComponent.getPosition(new Vector3i()));
+        }
+        if (entity.hasComponent(LocationComponent.class)) {
+            return entity.getComponent(LocationComponent.class).getWorldPosition(new Vector3f());
+        }
+        return new Vector3f();
+    }
+
+    private Quaternionf resolveRotation(EntityRef entity) {
         if (entity.hasComponent(BlockComponent.class)) {
             BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
             BlockFamily blockFamily = blockComponent.getBlock().getBlockFamily();
@@ -215,4 +544,17 @@ public class SegmentSystem extends BaseComponentSystem {
         }
         return new Quaternionf();
     }
+
+    /**
+     * The position and rotation of a segment entity.
+     */
+    private static final class Pose {
+        private final Vector3f position;
+        private final Quaternionf rotation;
+
+        private Pose(Vector3f position, Quaternionf rotation) {
+            this.position = position;
+            this.rotation = rotation;
+        }
+    }
 }
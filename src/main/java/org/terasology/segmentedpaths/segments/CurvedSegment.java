@@ -22,68 +22,323 @@ import org.joml.Vector3fc;
 import org.terasology.math.TeraMath;
 import org.terasology.segmentedpaths.components.CurvedPathComponent;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * An implementation of {@code Segment} representing segment composed of curves.
+ * <p>
+ * The control points of all curves are packed into one flat array per coordinate, and their arc length tables into
+ * shared flat arrays, so evaluating the segment walks contiguous memory instead of chasing vector objects.
  */
 public class CurvedSegment implements Segment {
 
+    /**
+     * @deprecated Arc lengths are no longer sampled at a fixed number of points, see {@link #DEFAULT_ARC_TOLERANCE}.
+     */
+    @Deprecated
     public static final int ARC_SEGMENT_ITERATIONS = 100;
 
-    private CurvedPathComponent.CubicBezier[] curves;
+    /**
+     * Default maximum error, in blocks, allowed per interval of the arc length table.
+     */
+    public static final float DEFAULT_ARC_TOLERANCE = 0.0005f;
+
+    /**
+     * Number of evenly spaced samples per curve used to seed the nearest point search.
+     */
+    private static final int NEAREST_COARSE_SAMPLES = 16;
+    /**
+     * Upper bound on the Newton steps used to refine the nearest point on a curve.
+     */
+    private static final int NEAREST_NEWTON_ITERATIONS = 8;
+
+    /**
+     * Bounds on how often a curve is halved while building its arc length table.
+     */
+    private static final int ARC_MIN_DEPTH = 2;
+    private static final int ARC_MAX_DEPTH = 12;
+
+    // five point Gauss-Legendre quadrature on [-1, 1]
+    private static final float[] GAUSS_NODES = {0f, -0.53846931f, 0.53846931f, -0.90617985f, 0.90617985f};
+    private static final float[] GAUSS_WEIGHTS = {0.56888889f, 0.47862867f, 0.47862867f, 0.23692689f, 0.23692689f};
+
+    private final int curveCount;
+    // control points f1 to f4 of curve i are at indices 4 * i to 4 * i + 3
+    private final float[] controlX;
+    private final float[] controlY;
+    private final float[] controlZ;
     private float[] arcLengths;
-    private float[][] arcSamples;
+    private final float arcTolerance;
+    // arc length table: curve i has cumulative distances arcSamples at parameters arcSampleTs, both in the index range
+    // arcSampleOffsets[i] to arcSampleOffsets[i + 1]
+    private int[] arcSampleOffsets;
+    private float[] arcSampleTs;
+    private float[] arcSamples;
+    // unit normal of the rotation minimizing frame at each sample of the arc length table
+    private float[] frameNormalX;
+    private float[] frameNormalY;
+    private float[] frameNormalZ;
+    // per curve min x, y, z followed by max x, y, z of the smallest box enclosing the curve
+    private float[] curveBounds;
 
     private Vector3fc startingBinormal;
-    private Vector3fc startingNormal;
 
     public CurvedSegment(CurvedPathComponent.CubicBezier[] curves, Vector3fc startingBinormal) {
-        this.curves = curves;
-        this.startingBinormal = startingBinormal;
-        this.arcLengths = new float[this.curves.length];
+        this(curves, startingBinormal, DEFAULT_ARC_TOLERANCE);
+    }
 
-        calculateLength();
+    /**
+     * @param curves The curves the segment is composed of
+     * @param startingBinormal The binormal at the start of the segment
+     * @param arcTolerance Maximum error, in blocks, allowed per interval of the arc length table. Smaller values give more
+     *     uniform movement along strongly curved segments at the cost of a larger table.
+     */
+    public CurvedSegment(CurvedPathComponent.CubicBezier[] curves, Vector3fc startingBinormal, float arcTolerance) {
+        this(curves, startingBinormal, arcTolerance, null);
+    }
 
-        this.startingNormal = tangent(0, 0).cross(startingBinormal, new Vector3f());
+    /**
+     * @param tables Tables previously written by {@link #writeTables(ByteBuffer)} for the same curves, binormal and
+     *     tolerance, which are used instead of calculating them, or null to calculate them
+     */
+    CurvedSegment(CurvedPathComponent.CubicBezier[] curves, Vector3fc startingBinormal, float arcTolerance,
+                  ByteBuffer tables) {
+        this.arcTolerance = arcTolerance;
+        this.curveCount = curves.length;
+        this.controlX = new float[curveCount * 4];
+        this.controlY = new float[curveCount * 4];
+        this.controlZ = new float[curveCount * 4];
+        for (int x = 0; x < curveCount; x++) {
+            setControlPoint(x * 4, curves[x].f1);
+            setControlPoint(x * 4 + 1, curves[x].f2);
+            setControlPoint(x * 4 + 2, curves[x].f3);
+            setControlPoint(x * 4 + 3, curves[x].f4);
+        }
+        this.startingBinormal = startingBinormal;
+        this.arcLengths = new float[curveCount];
 
+        if (tables != null) {
+            readTables(tables);
+        } else {
+            calculateLength();
+            calculateBounds();
+        }
+    }
+
+    private void setControlPoint(int offset, Vector3fc point) {
+        controlX[offset] = point.x();
+        controlY[offset] = point.y();
+        controlZ[offset] = point.z();
     }
 
     /**
      * Calculates length of all the curves segment is composed of.
+     * <p>
+     * Each curve is halved until Gauss-Legendre quadrature of both halves agrees with the whole to within the tolerance and
+     * interpolating linearly between the samples is accurate to within the tolerance as well, so flat stretches get few
+     * samples and tight bends get many. The frames along the segment are calculated at the same samples.
      */
     public void calculateLength() {
-        if (this.curves.length == 0) {
+        if (curveCount == 0) {
             return;
         }
 
-        arcSamples = new float[this.curves.length][ARC_SEGMENT_ITERATIONS + 1];
-
+        ArcTable table = new ArcTable(curveCount * 8);
+        arcSampleOffsets = new int[curveCount + 1];
         float distance = 0f;
+        for (int x = 0; x < curveCount; x++) {
+            arcSampleOffsets[x] = table.size;
+            table.add(0f, distance);
+            distance = subdivide(x, 0f, 1f, gaussLength(x, 0f, 1f), distance, 0, table);
+            this.arcLengths[x] = distance;
+        }
+        arcSampleOffsets[curveCount] = table.size;
+        arcSampleTs = Arrays.copyOf(table.ts, table.size);
+        arcSamples = Arrays.copyOf(table.samples, table.size);
+        calculateFrames();
+    }
 
-        Vector3f previous = point(0, 0);// curves[0].getPoint(0);
-        for (int x = 0; x < curves.length; x++) {
+    /**
+     * Carries the frame at the start of the segment along the samples of the arc length table by double reflection
+     * (Wang et al., Computation of Rotation Minimizing Frames, 2008). The resulting frames do not twist around the tangent,
+     * also across the joints between curves.
+     */
+    private void calculateFrames() {
+        int count = arcSampleTs.length;
+        frameNormalX = new float[count];
+        frameNormalY = new float[count];
+        frameNormalZ = new float[count];
+
+        Vector3f tangent = new Vector3f();
+        Vector3f previousTangent = tangent(0, 0, new Vector3f());
+        Vector3f normal = previousTangent.cross(startingBinormal, new Vector3f()).normalize();
+        Vector3f reflection = new Vector3f();
+        for (int x = 0; x < curveCount; x++) {
+            int c = x * 4;
+            float previousT = 0;
+            for (int i = arcSampleOffsets[x]; i < arcSampleOffsets[x + 1]; i++) {
+                float t = arcSampleTs[i];
+                tangent(x, t, tangent);
+                if (i == arcSampleOffsets[x]) {
+                    // the curves meet in a point, so the frame is only turned by the shortest rotation taking the tangent
+                    // of the previous curve onto the one of this curve
+                    float cos = previousTangent.dot(tangent);
+                    if (cos > -1f + 1e-6f) {
+                        normal.fma(-normal.dot(tangent) / (1f + cos), reflection.set(previousTangent).add(tangent));
+                    }
+                } else {
+                    // reflect the frame in the plane bisecting the two points, then in the one taking the tangents onto
+                    // each other
+                    reflection.set(chord(controlX, c, previousT, t), chord(controlY, c, previousT, t),
+                        chord(controlZ, c, previousT, t));
+                    float length = reflection.lengthSquared();
+                    if (length > 1e-12f) {
+                        normal.fma(-2f * reflection.dot(normal) / length, reflection);
+                        previousTangent.fma(-2f * reflection.dot(previousTangent) / length, reflection);
+                    }
+                    reflection.set(tangent).sub(previousTangent);
+                    length = reflection.lengthSquared();
+                    if (length > 1e-12f) {
+                        normal.fma(-2f * reflection.dot(normal) / length, reflection);
+                    }
+                }
+                normal.normalize();
+                frameNormalX[i] = normal.x;
+                frameNormalY[i] = normal.y;
+                frameNormalZ[i] = normal.z;
+                previousTangent.set(tangent);
+                previousT = t;
+            }
+        }
+    }
 
-            for (int y = 0; y <= ARC_SEGMENT_ITERATIONS; y++) {
-                Vector3f current = point(x, y / (float) ARC_SEGMENT_ITERATIONS);
-                distance += current.distance(previous);
-                arcSamples[x][y] = distance;
-                previous = current;
+    /**
+     * Adds samples for the interval [a, b] of a curve to the table, halving it as long as the error is too large. An
+     * interval that is not halved adds samples at its middle and its end.
+     *
+     * @return the cumulative distance at b
+     */
+    private float subdivide(int index, float a, float b, float length, float start, int depth, ArcTable table) {
+        float mid = (a + b) * 0.5f;
+        float left = gaussLength(index, a, mid);
+        float right = gaussLength(index, mid, b);
+        if (depth < ARC_MAX_DEPTH && (depth < ARC_MIN_DEPTH || Math.abs(left + right - length) > arcTolerance
+            || interpolationError(index, a, mid, left) > arcTolerance
+            || interpolationError(index, mid, b, right) > arcTolerance)) {
+            float middle = subdivide(index, a, mid, left, start, depth + 1, table);
+            return subdivide(index, mid, b, right, middle, depth + 1, table);
+        }
+        table.add(mid, start + left);
+        table.add(b, start + left + right);
+        return start + left + right;
+    }
 
-            }
-            this.arcLengths[x] = distance;
+    /**
+     * Returns the error of interpolating the distance linearly between a and b, taken at the middle of the interval.
+     */
+    private float interpolationError(int index, float a, float b, float length) {
+        return Math.abs(gaussLength(index, a, (a + b) * 0.5f) - length * 0.5f);
+    }
+
+    private float gaussLength(int index, float a, float b) {
+        float half = (b - a) * 0.5f;
+        float center = (a + b) * 0.5f;
+        float sum = 0;
+        for (int x = 0; x < GAUSS_NODES.length; x++) {
+            sum += GAUSS_WEIGHTS[x] * speed(index, center + half * GAUSS_NODES[x]);
         }
+        return sum * half;
     }
 
-    @Override
-    public int index(float segmentPosition) {
-        if (segmentPosition < 0) {
-            return 0;
+    private float speed(int index, float t) {
+        float num = 1f - t;
+        float b1 = 3f * num * num;
+        float b2 = 6f * num * t;
+        float b3 = 3f * t * t;
+        int c = index * 4;
+        float dx = derivative(controlX, c, b1, b2, b3);
+        float dy = derivative(controlY, c, b1, b2, b3);
+        float dz = derivative(controlZ, c, b1, b2, b3);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Calculates the bounds of all curves from their end points and the extrema of each coordinate in between.
+     */
+    private void calculateBounds() {
+        curveBounds = new float[curveCount * 6];
+        for (int x = 0; x < curveCount; x++) {
+            calculateBounds(controlX, x, 0);
+            calculateBounds(controlY, x, 1);
+            calculateBounds(controlZ, x, 2);
         }
-        for (int x = 0; x < arcLengths.length; x++) {
-            if (segmentPosition < arcLengths[x]) {
-                return x;
+    }
+
+    private void calculateBounds(float[] control, int index, int axis) {
+        int c = index * 4;
+        float low = Math.min(control[c], control[c + 3]);
+        float high = Math.max(control[c], control[c + 3]);
+
+        // the coordinate has its extrema where the derivative, a quadratic a t^2 + b t + d1 up to a factor of 3, is zero
+        float d1 = control[c + 1] - control[c];
+        float d2 = control[c + 2] - control[c + 1];
+        float d3 = control[c + 3] - control[c + 2];
+        float a = d1 - 2f * d2 + d3;
+        float b = 2f * (d2 - d1);
+        float t1 = Float.NaN;
+        float t2 = Float.NaN;
+        if (Math.abs(a) < 1e-6f) {
+            if (b != 0) {
+                t1 = -d1 / b;
+            }
+        } else {
+            float discriminant = b * b - 4f * a * d1;
+            if (discriminant >= 0) {
+                float root = Math.sqrt(discriminant);
+                t1 = (-b + root) / (2f * a);
+                t2 = (-b - root) / (2f * a);
             }
         }
-        return arcLengths.length - 1;
+        if (t1 > 0 && t1 < 1) {
+            float value = bezier(control, c, t1);
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        if (t2 > 0 && t2 < 1) {
+            float value = bezier(control, c, t2);
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        curveBounds[index * 6 + axis] = low;
+        curveBounds[index * 6 + 3 + axis] = high;
+    }
+
+    /**
+     * (B(b) - B(a)) / (b - a) for one coordinate of the curve starting at the given control point, expanded so that the
+     * difference in t cancels exactly.
+     */
+    private static float chord(float[] control, int c, float a, float b) {
+        float d1 = control[c + 1] - control[c];
+        float d2 = control[c + 2] - 2f * control[c + 1] + control[c];
+        float d3 = control[c + 3] - 3f * control[c + 2] + 3f * control[c + 1] - control[c];
+        return 3f * d1 + 3f * d2 * (a + b) + d3 * (a * a + a * b + b * b);
+    }
+
+    private static float bezier(float[] control, int c, float t) {
+        float num = 1f - t;
+        return control[c] * num * num * num + control[c + 1] * 3f * num * num * t + control[c + 2] * 3f * num * t * t
+            + control[c + 3] * t * t * t;
+    }
+
+    @Override
+    public int index(float segmentPosition) {
+        return SegmentSearch.index(arcLengths, segmentPosition);
+    }
+
+    @Override
+    public int index(float segmentPosition, int hint) {
+        return SegmentSearch.index(arcLengths, segmentPosition, hint);
     }
 
     @Override
@@ -93,92 +348,462 @@ public class CurvedSegment implements Segment {
 
     @Override
     public float getSegmentPosition(int index, float segmentPosition) {
-        for (int x = 0; x < arcSamples[index].length; x++) {
-            if (segmentPosition < arcSamples[index][x]) {
-                return x / ((float) ARC_SEGMENT_ITERATIONS);
-            }
-        }
-        return 1.0f;
+        int offset = arcSampleOffsets[index];
+        return SegmentSearch.interpolate(arcSamples, arcSampleTs, offset, arcSampleOffsets[index + 1] - offset,
+            segmentPosition);
     }
 
     @Override
     public float nearestSegmentPosition(Vector3f pos, Vector3f segmentPosition, Quaternionf segmentRotation) {
-        if (this.curves.length == 0) {
+        if (curveCount == 0) {
             return 0f;
         }
 
-        float result = 0;
-        float closest = Float.MAX_VALUE;
+        Vector3f local = segmentRotation.transformInverse(new Vector3f(pos).sub(segmentPosition));
+        Vector3f current = new Vector3f();
+        Vector3f firstDerivative = new Vector3f();
+        Vector3f secondDerivative = new Vector3f();
+        float[] samples = new float[NEAREST_COARSE_SAMPLES + 1];
 
-        float tvalue = 0f;
-        Vector3f previous = point(0, 0, segmentPosition, segmentRotation);
-        for (int x = 0; x < curves.length; x++) {
-            for (int y = 0; y <= ARC_SEGMENT_ITERATIONS; y++) {
-                Vector3f current = point(x, y / (float) ARC_SEGMENT_ITERATIONS, segmentPosition, segmentRotation);
-                tvalue += current.distance(previous);
-                previous = current;
+        float closest = Float.MAX_VALUE;
+        int closestIndex = 0;
+        float closestT = 0;
+        for (int x = 0; x < curveCount; x++) {
+            if (boundsDistanceSquared(x, local) >= closest) {
+                continue;
+            }
 
-                float distance = current.distance(pos);
+            for (int y = 0; y <= NEAREST_COARSE_SAMPLES; y++) {
+                samples[y] = point(x, y / (float) NEAREST_COARSE_SAMPLES, current).distanceSquared(local);
+            }
+            // a sharp curve can pass close to the point between two samples that are both further away than a sample
+            // elsewhere, so every local minimum of the samples is refined rather than only the closest sample
+            for (int y = 0; y <= NEAREST_COARSE_SAMPLES; y++) {
+                if ((y > 0 && samples[y - 1] < samples[y])
+                    || (y < NEAREST_COARSE_SAMPLES && samples[y + 1] < samples[y])) {
+                    continue;
+                }
+                float t = refineNearest(x, local, y / (float) NEAREST_COARSE_SAMPLES, samples[y], current,
+                    firstDerivative, secondDerivative);
+                float distance = point(x, t, current).distanceSquared(local);
                 if (distance < closest) {
                     closest = distance;
-                    result = tvalue;
+                    closestIndex = x;
+                    closestT = t;
                 }
             }
         }
-        return result;
+
+        int offset = arcSampleOffsets[closestIndex];
+        return SegmentSearch.interpolate(arcSampleTs, arcSamples, offset, arcSampleOffsets[closestIndex + 1] - offset,
+            closestT);
+    }
+
+    /**
+     * Newton iteration on (B(t) - p) . B'(t) = 0, starting from a coarse sample and stopping once a step no longer brings
+     * the curve closer to the point.
+     */
+    private float refineNearest(int index, Vector3f local, float t, float distance, Vector3f current,
+                                Vector3f firstDerivative, Vector3f secondDerivative) {
+        for (int i = 0; i < NEAREST_NEWTON_ITERATIONS; i++) {
+            point(index, t, current).sub(local);
+            derivative(index, t, firstDerivative);
+            secondDerivative(index, t, secondDerivative);
+            float denominator = firstDerivative.lengthSquared() + current.dot(secondDerivative);
+            if (denominator <= 0) {
+                break;
+            }
+            float next = Math.clamp(0f, 1f, t - current.dot(firstDerivative) / denominator);
+            float refined = point(index, next, current).distanceSquared(local);
+            if (refined > distance) {
+                break;
+            }
+            boolean converged = Math.abs(next - t) < 1e-6f;
+            distance = refined;
+            t = next;
+            if (converged) {
+                break;
+            }
+        }
+        return t;
+    }
+
+    private float boundsDistanceSquared(int index, Vector3f point) {
+        int offset = index * 6;
+        float dx = Math.max(Math.max(curveBounds[offset] - point.x, 0), point.x - curveBounds[offset + 3]);
+        float dy = Math.max(Math.max(curveBounds[offset + 1] - point.y, 0), point.y - curveBounds[offset + 4]);
+        float dz = Math.max(Math.max(curveBounds[offset + 2] - point.z, 0), point.z - curveBounds[offset + 5]);
+        return dx * dx + dy * dy + dz * dz;
     }
 
     @Override
-    public float maxDistance() {
-        return arcLengths[arcLengths.length - 1];
+    public void bounds(int index, Vector3f min, Vector3f max) {
+        int offset = index * 6;
+        min.set(curveBounds[offset], curveBounds[offset + 1], curveBounds[offset + 2]);
+        max.set(curveBounds[offset + 3], curveBounds[offset + 4], curveBounds[offset + 5]);
     }
 
     @Override
-    public Vector3f tangent(int index, float t) {
-        CurvedPathComponent.CubicBezier curve = curves[index];
+    public void bounds(Vector3f min, Vector3f max) {
+        if (curveCount == 0) {
+            min.zero();
+            max.zero();
+            return;
+        }
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        for (int x = 0; x < curveCount; x++) {
+            int offset = x * 6;
+            min.set(Math.min(min.x, curveBounds[offset]), Math.min(min.y, curveBounds[offset + 1]),
+                Math.min(min.z, curveBounds[offset + 2]));
+            max.set(Math.max(max.x, curveBounds[offset + 3]), Math.max(max.y, curveBounds[offset + 4]),
+                Math.max(max.z, curveBounds[offset + 5]));
+        }
+    }
+
+    /**
+     * Unnormalized first derivative of the curve with the given index.
+     */
+    private Vector3f derivative(int index, float t, Vector3f dest) {
+        float num = 1f - t;
+        float b1 = 3f * num * num;
+        float b2 = 6f * num * t;
+        float b3 = 3f * t * t;
+        int c = index * 4;
+        return dest.set(
+            derivative(controlX, c, b1, b2, b3),
+            derivative(controlY, c, b1, b2, b3),
+            derivative(controlZ, c, b1, b2, b3));
+    }
 
-        float result = TeraMath.clamp(t, 0, 1f);
-        float num = 1f - result;
-        Vector3f vf1 = new Vector3f(curve.f2).sub(curve.f1).mul(3f * num * num);
-        Vector3f vf2 = new Vector3f(curve.f3).sub(curve.f2).mul(6f * num * t);
-        Vector3f vf3 = new Vector3f(curve.f4).sub(curve.f3).mul(3f * t * t);
+    private static float derivative(float[] control, int c, float b1, float b2, float b3) {
+        return (control[c + 1] - control[c]) * b1 + (control[c + 2] - control[c + 1]) * b2
+            + (control[c + 3] - control[c + 2]) * b3;
+    }
 
-        return vf1.add(vf2).add(vf3).normalize();
+    /**
+     * Second derivative of the curve with the given index.
+     */
+    private Vector3f secondDerivative(int index, float t, Vector3f dest) {
+        float b1 = 6f * (1f - t);
+        float b2 = 6f * t;
+        int c = index * 4;
+        return dest.set(
+            secondDerivative(controlX, c, b1, b2),
+            secondDerivative(controlY, c, b1, b2),
+            secondDerivative(controlZ, c, b1, b2));
+    }
+
+    private static float secondDerivative(float[] control, int c, float b1, float b2) {
+        return (control[c + 2] - 2f * control[c + 1] + control[c]) * b1
+            + (control[c + 3] - 2f * control[c + 2] + control[c + 1]) * b2;
     }
 
     @Override
-    public Vector3f tangent(int index, float t, Quaternionf rotation) {
-        return rotation.transform(this.tangent(index, t));
+    public float maxDistance() {
+        return arcLengths[arcLengths.length - 1];
     }
 
     @Override
-    public Vector3f point(int index, float t) {
-        CurvedPathComponent.CubicBezier curve = curves[index];
+    public Vector3f tangent(int index, float t, Vector3f dest) {
+        return derivative(index, TeraMath.clamp(t, 0, 1f), dest).normalize();
+    }
 
-        float v = Math.clamp(t, 0, 1f);
+    @Override
+    public Vector3f point(int index, float t, Vector3f dest) {
+        float v = Math.clamp(0f, 1f, t);
         float num = 1f - v;
-        Vector3f vf1 = new Vector3f(curve.f1).mul(num * num * num);
-        Vector3f vf2 = new Vector3f(curve.f2).mul(3f * num * num * v);
-        Vector3f vf3 = new Vector3f(curve.f3).mul(3f * num * v * v);
-        Vector3f vf4 = new Vector3f(curve.f4).mul(v * v * v);
-        return vf1.add(vf2).add(vf3).add(vf4);
+        float b1 = num * num * num;
+        float b2 = 3f * num * num * v;
+        float b3 = 3f * num * v * v;
+        float b4 = v * v * v;
+        int c = index * 4;
+        return dest.set(
+            controlX[c] * b1 + controlX[c + 1] * b2 + controlX[c + 2] * b3 + controlX[c + 3] * b4,
+            controlY[c] * b1 + controlY[c + 1] * b2 + controlY[c + 2] * b3 + controlY[c + 3] * b4,
+            controlZ[c] * b1 + controlZ[c + 1] * b2 + controlZ[c + 2] * b3 + controlZ[c + 3] * b4);
     }
 
     @Override
-    public Vector3f point(int index, float t, Vector3f position, Quaternionf rotation) {
-        return rotation.transform(point(index, t)).add(position);
+    public Vector3f normal(int index, float t, Vector3f dest) {
+        return frame(index, t, dest, false);
     }
 
     @Override
-    public Vector3f normal(int index, float t) {
-        Vector3f startingTangent = tangent(0, 0);
-        Vector3f tangent = tangent(index, t);
-        Quaternionf arcCurve = new Quaternionf().rotateTo(startingTangent, tangent);
-        return arcCurve.transform(startingNormal, new Vector3f());
+    public Vector3f binormal(int index, float t, Vector3f dest) {
+        return frame(index, t, dest, true);
     }
 
     @Override
-    public Vector3f normal(int index, float t, Quaternionf rotation) {
-        return rotation.transform(normal(index, t));
+    public float curvature(int index, float t) {
+        float u = TeraMath.clamp(t, 0, 1f);
+        float num = 1f - u;
+        float b1 = 3f * num * num;
+        float b2 = 6f * num * u;
+        float b3 = 3f * u * u;
+        int c = index * 4;
+        float dx = derivative(controlX, c, b1, b2, b3);
+        float dy = derivative(controlY, c, b1, b2, b3);
+        float dz = derivative(controlZ, c, b1, b2, b3);
+        float ddx = secondDerivative(controlX, c, 6f * num, 6f * u);
+        float ddy = secondDerivative(controlY, c, 6f * num, 6f * u);
+        float ddz = secondDerivative(controlZ, c, 6f * num, 6f * u);
+        float speed = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (speed < 1e-6f) {
+            return 0;
+        }
+        // |B' x B''| / |B'|^3
+        float cx = dy * ddz - dz * ddy;
+        float cy = dz * ddx - dx * ddz;
+        float cz = dx * ddy - dy * ddx;
+        return Math.sqrt(cx * cx + cy * cy + cz * cz) / (speed * speed * speed);
+    }
+
+    /**
+     * Carries the rotation minimizing frame from the sample nearest to t on to t with one more double reflection step and
+     * stores its normal or binormal in dest.
+     */
+    private Vector3f frame(int index, float t, Vector3f dest, boolean binormal) {
+        int offset = arcSampleOffsets[index];
+        float v = Math.clamp(0f, 1f, t);
+        int i = offset + Math.round(SegmentSearch.inverse(arcSampleTs, offset, arcSampleOffsets[index + 1] - offset, v));
+        float from = arcSampleTs[i];
+        float nx = frameNormalX[i];
+        float ny = frameNormalY[i];
+        float nz = frameNormalZ[i];
+
+        tangent(index, v, dest);
+        if (v != from) {
+            // the chord from the sample to t, divided by the difference in t; subtracting the two points instead loses
+            // its direction to rounding when t is close to the sample, which then twists the frame
+            int c = index * 4;
+            float rx = chord(controlX, c, from, v);
+            float ry = chord(controlY, c, from, v);
+            float rz = chord(controlZ, c, from, v);
+            float tx = dest.x;
+            float ty = dest.y;
+            float tz = dest.z;
+            tangent(index, from, dest);
+            float length = rx * rx + ry * ry + rz * rz;
+            if (length > 1e-12f) {
+                float k = -2f * (rx * nx + ry * ny + rz * nz) / length;
+                nx += k * rx;
+                ny += k * ry;
+                nz += k * rz;
+                k = -2f * (rx * dest.x + ry * dest.y + rz * dest.z) / length;
+                dest.add(k * rx, k * ry, k * rz);
+            }
+            rx = tx - dest.x;
+            ry = ty - dest.y;
+            rz = tz - dest.z;
+            length = rx * rx + ry * ry + rz * rz;
+            if (length > 1e-12f) {
+                float k = -2f * (rx * nx + ry * ny + rz * nz) / length;
+                nx += k * rx;
+                ny += k * ry;
+                nz += k * rz;
+            }
+            dest.set(tx, ty, tz);
+        }
+        if (binormal) {
+            // the frame is right handed with tangent x binormal = normal, so binormal = normal x tangent
+            return dest.set(ny * dest.z - nz * dest.y, nz * dest.x - nx * dest.z, nx * dest.y - ny * dest.x);
+        }
+        return dest.set(nx, ny, nz);
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeTables(ByteBuffer)} writes for this segment.
+     */
+    int tableBytes() {
+        int samples = arcSampleTs.length;
+        return Integer.BYTES * 2 + Float.BYTES * (4 + curveCount * 12)
+            + Float.BYTES * curveCount + Integer.BYTES * (curveCount + 1) + Float.BYTES * samples * 5
+            + Float.BYTES * curveCount * 6;
+    }
+
+    /**
+     * Writes the inputs of this segment followed by its precomputed tables to the given buffer, in the buffer's byte
+     * order. The inputs let {@link #readTables(ByteBuffer, CurvedPathComponent.CubicBezier[], Vector3fc, float)} check
+     * that the tables belong to the curves they are read for. Segments without curves have no tables and must not be
+     * written.
+     *
+     * @param dest The buffer to write to, starting at its position
+     */
+    void writeTables(ByteBuffer dest) {
+        dest.putFloat(arcTolerance);
+        dest.putInt(curveCount);
+        dest.putInt(arcSampleTs.length);
+        dest.putFloat(startingBinormal.x()).putFloat(startingBinormal.y()).putFloat(startingBinormal.z());
+        for (int x = 0; x < curveCount * 4; x++) {
+            dest.putFloat(controlX[x]).putFloat(controlY[x]).putFloat(controlZ[x]);
+        }
+        put(dest, arcLengths);
+        for (int offset : arcSampleOffsets) {
+            dest.putInt(offset);
+        }
+        put(dest, arcSampleTs);
+        put(dest, arcSamples);
+        put(dest, frameNormalX);
+        put(dest, frameNormalY);
+        put(dest, frameNormalZ);
+        put(dest, curveBounds);
+    }
+
+    /**
+     * Creates a segment from tables written by {@link #writeTables(ByteBuffer)}, provided they were written for exactly
+     * the given curves, binormal and tolerance.
+     *
+     * @param src The buffer holding exactly the tables, starting at its position
+     * @return The segment, or null if the tables were written for different inputs
+     * @throws IllegalArgumentException If the tables are damaged
+     */
+    static CurvedSegment readTables(ByteBuffer src, CurvedPathComponent.CubicBezier[] curves, Vector3fc startingBinormal,
+                                    float arcTolerance) {
+        ByteBuffer tables = src.duplicate().order(src.order());
+        if (tables.remaining() < Integer.BYTES * 2 + Float.BYTES * 4
+            || Float.floatToIntBits(tables.getFloat()) != Float.floatToIntBits(arcTolerance)
+            || tables.getInt() != curves.length || curves.length == 0) {
+            return null;
+        }
+        int samples = tables.getInt();
+        long expected = Integer.BYTES * 2 + Float.BYTES * (4 + curves.length * 12L) + Float.BYTES * (long) curves.length
+            + Integer.BYTES * (curves.length + 1L) + Float.BYTES * samples * 5L + Float.BYTES * curves.length * 6L;
+        if (samples < curves.length + 1 || expected != src.remaining()) {
+            throw new IllegalArgumentException("Segment tables of " + src.remaining() + " bytes, expected " + expected);
+        }
+        if (!matches(tables, startingBinormal)) {
+            return null;
+        }
+        for (CurvedPathComponent.CubicBezier curve : curves) {
+            if (!matches(tables, curve.f1) || !matches(tables, curve.f2) || !matches(tables, curve.f3)
+                || !matches(tables, curve.f4)) {
+                return null;
+            }
+        }
+        return new CurvedSegment(curves, startingBinormal, arcTolerance, src);
+    }
+
+    private void readTables(ByteBuffer src) {
+        ByteBuffer tables = src.duplicate().order(src.order());
+        tables.getFloat();
+        tables.getInt();
+        int samples = tables.getInt();
+        // skip the inputs, which were checked by readTables(ByteBuffer, ...)
+        tables.position(tables.position() + Float.BYTES * (3 + curveCount * 12));
+        tables.asFloatBuffer().get(arcLengths);
+        tables.position(tables.position() + Float.BYTES * curveCount);
+        arcSampleOffsets = new int[curveCount + 1];
+        tables.asIntBuffer().get(arcSampleOffsets);
+        tables.position(tables.position() + Integer.BYTES * (curveCount + 1));
+        arcSampleTs = get(tables, samples);
+        arcSamples = get(tables, samples);
+        frameNormalX = get(tables, samples);
+        frameNormalY = get(tables, samples);
+        frameNormalZ = get(tables, samples);
+        curveBounds = get(tables, curveCount * 6);
+        checkFinite(arcLengths);
+        checkFinite(arcSampleTs);
+        checkFinite(arcSamples);
+        checkFinite(frameNormalX);
+        checkFinite(frameNormalY);
+        checkFinite(frameNormalZ);
+        checkFinite(curveBounds);
+        // the offsets index the sample tables, so they have to be in order and in range, with two samples per curve at least
+        if (arcSampleOffsets[0] != 0 || arcSampleOffsets[curveCount] != samples) {
+            throw new IllegalArgumentException("Segment tables not covering their " + samples + " arc samples");
+        }
+        float distance = 0;
+        for (int x = 0; x < curveCount; x++) {
+            int first = arcSampleOffsets[x];
+            int last = arcSampleOffsets[x + 1] - 1;
+            if (first < 0 || last > samples - 1 || last - first < 1) {
+                throw new IllegalArgumentException("Segment tables with fewer than two arc samples for curve " + x);
+            }
+            if (arcSampleTs[first] != 0 || arcSampleTs[last] != 1 || arcSamples[first] != distance
+                || arcSamples[last] != arcLengths[x]) {
+                throw new IllegalArgumentException("Segment tables with arc samples not spanning curve " + x);
+            }
+            // the searches need increasing parameters; distances only stay equal along a curve of zero length
+            for (int i = first + 1; i <= last; i++) {
+                if (arcSampleTs[i] <= arcSampleTs[i - 1] || arcSamples[i] < arcSamples[i - 1]) {
+                    throw new IllegalArgumentException("Segment tables with arc samples out of order in curve " + x);
+                }
+            }
+            distance = arcLengths[x];
+        }
+    }
+
+    private static void checkFinite(float[] values) {
+        for (float value : values) {
+            if (!Float.isFinite(value)) {
+                throw new IllegalArgumentException("Segment tables with non-finite value " + value);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this segment was built for exactly the given curves, binormal and tolerance.
+     */
+    boolean isFor(CurvedPathComponent.CubicBezier[] curves, Vector3fc startingBinormal, float arcTolerance) {
+        if (curves.length != curveCount || Float.floatToIntBits(arcTolerance) != Float.floatToIntBits(this.arcTolerance)
+            || !startingBinormal.equals(this.startingBinormal)) {
+            return false;
+        }
+        for (int x = 0; x < curveCount; x++) {
+            if (!isControlPoint(x * 4, curves[x].f1) || !isControlPoint(x * 4 + 1, curves[x].f2)
+                || !isControlPoint(x * 4 + 2, curves[x].f3) || !isControlPoint(x * 4 + 3, curves[x].f4)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isControlPoint(int offset, Vector3fc point) {
+        return Float.floatToIntBits(controlX[offset]) == Float.floatToIntBits(point.x())
+            && Float.floatToIntBits(controlY[offset]) == Float.floatToIntBits(point.y())
+            && Float.floatToIntBits(controlZ[offset]) == Float.floatToIntBits(point.z());
+    }
+
+    private static boolean matches(ByteBuffer src, Vector3fc vector) {
+        return Float.floatToIntBits(src.getFloat()) == Float.floatToIntBits(vector.x())
+            & Float.floatToIntBits(src.getFloat()) == Float.floatToIntBits(vector.y())
+            & Float.floatToIntBits(src.getFloat()) == Float.floatToIntBits(vector.z());
+    }
+
+    private static void put(ByteBuffer dest, float[] values) {
+        dest.asFloatBuffer().put(values);
+        dest.position(dest.position() + Float.BYTES * values.length);
+    }
+
+    private static float[] get(ByteBuffer src, int count) {
+        float[] values = new float[count];
+        src.asFloatBuffer().get(values);
+        src.position(src.position() + Float.BYTES * count);
+        return values;
+    }
+
+    /**
+     * Growable pair of arrays collecting the arc length table while it is built.
+     */
+    private static final class ArcTable {
+        private float[] ts;
+        private float[] samples;
+        private int size;
+
+        private ArcTable(int capacity) {
+            ts = new float[capacity];
+            samples = new float[capacity];
+        }
+
+        private void add(float t, float sample) {
+            if (size == ts.length) {
+                ts = Arrays.copyOf(ts, size * 2);
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            ts[size] = t;
+            samples[size] = sample;
+            size++;
+        }
     }
 }
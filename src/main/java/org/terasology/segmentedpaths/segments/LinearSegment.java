@@ -22,18 +22,40 @@ import org.terasology.segmentedpaths.components.LinearPathComponent;
 
 /**
  * An implementation of {@code Segment} representing segment composed of straight subsegments.
+ * <p>
+ * Points, binormals and tangents are packed into one flat array per coordinate, so evaluating the segment walks contiguous
+ * memory instead of chasing vector objects.
  */
 public class LinearSegment implements Segment {
     private float[] arcLengths;
-    private Vector3f[] tangents;
-    private Vector3f[] arc;
-    private LinearPathComponent.Linear[] linearPoints;
+    private float[] tangentX;
+    private float[] tangentY;
+    private float[] tangentZ;
+    private float[] pointX;
+    private float[] pointY;
+    private float[] pointZ;
+    private float[] binormalX;
+    private float[] binormalY;
+    private float[] binormalZ;
 
     public LinearSegment(LinearPathComponent.Linear[] points) {
         if (points.length < 2) {
             return;
         }
-        this.linearPoints = points;
+        this.pointX = new float[points.length];
+        this.pointY = new float[points.length];
+        this.pointZ = new float[points.length];
+        this.binormalX = new float[points.length];
+        this.binormalY = new float[points.length];
+        this.binormalZ = new float[points.length];
+        for (int x = 0; x < points.length; x++) {
+            pointX[x] = points[x].point.x;
+            pointY[x] = points[x].point.y;
+            pointZ[x] = points[x].point.z;
+            binormalX[x] = points[x].binormal.x;
+            binormalY[x] = points[x].binormal.y;
+            binormalZ[x] = points[x].binormal.z;
+        }
         calculateLength();
     }
 
@@ -41,32 +63,33 @@ public class LinearSegment implements Segment {
      * Calculates lengths and tagets for all the subsegments in this segment.
      */
     public void calculateLength() {
-
-        this.tangents = new Vector3f[linearPoints.length - 1];
-        this.arcLengths = new float[linearPoints.length - 1];
-        this.arc = new Vector3f[linearPoints.length - 1];
-        LinearPathComponent.Linear previous = linearPoints[0];
+        int count = pointX.length - 1;
+        this.tangentX = new float[count];
+        this.tangentY = new float[count];
+        this.tangentZ = new float[count];
+        this.arcLengths = new float[count];
         float distance = 0;
-        for (int x = 1; x < linearPoints.length; x++) {
-            distance += previous.point.distance(linearPoints[x].point);
-            arcLengths[x - 1] = distance;
-            tangents[x - 1] = new Vector3f(linearPoints[x].point).sub(previous.point).normalize();
-            arc[x - 1] = new Vector3f(linearPoints[x].point).sub(previous.point);
-            previous = linearPoints[x];
+        for (int x = 0; x < count; x++) {
+            float dx = pointX[x + 1] - pointX[x];
+            float dy = pointY[x + 1] - pointY[x];
+            float dz = pointZ[x + 1] - pointZ[x];
+            float length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            distance += length;
+            arcLengths[x] = distance;
+            tangentX[x] = dx / length;
+            tangentY[x] = dy / length;
+            tangentZ[x] = dz / length;
         }
     }
 
     @Override
     public int index(float segmentPosition) {
-        if (segmentPosition < 0) {
-            return 0;
-        }
-        for (int x = 0; x < arcLengths.length; x++) {
-            if (segmentPosition < arcLengths[x]) {
-                return x;
-            }
-        }
-        return arcLengths.length - 1;
+        return SegmentSearch.index(arcLengths, segmentPosition);
+    }
+
+    @Override
+    public int index(float segmentPosition, int hint) {
+        return SegmentSearch.index(arcLengths, segmentPosition, hint);
     }
 
     @Override
@@ -84,70 +107,106 @@ public class LinearSegment implements Segment {
 
     @Override
     public float nearestSegmentPosition(Vector3f pos, Vector3f segmentPosition, Quaternionf segmentRotation) {
-        if (this.linearPoints.length == 0) {
+        if (this.arcLengths == null) {
             return 0f;
         }
 
+        Vector3f local = segmentRotation.transformInverse(new Vector3f(pos).sub(segmentPosition));
+
         float result = 0;
         float closest = Float.MAX_VALUE;
-
-        float tvalue = 0f;
-        Vector3f previous = point(0, 0, segmentPosition, segmentRotation);
+        float start = 0;
         for (int x = 0; x < arcLengths.length; x++) {
-            for (int y = 0; y <= 100; y++) {
-                Vector3f current = point(x, y / (float) 100, segmentPosition, segmentRotation);
-                tvalue += current.distance(previous);
-                previous = current;
-
-                float distance = current.distance(pos);
-                if (distance < closest) {
-                    closest = distance;
-                    result = tvalue;
-                }
+            float dx = local.x - pointX[x];
+            float dy = local.y - pointY[x];
+            float dz = local.z - pointZ[x];
+            float length = arcLengths[x] - start;
+
+            float t = 0;
+            if (length > 0) {
+                t = Math.clamp(0f, 1f, (dx * tangentX[x] + dy * tangentY[x] + dz * tangentZ[x]) / length);
+            }
+            float ex = dx - (pointX[x + 1] - pointX[x]) * t;
+            float ey = dy - (pointY[x + 1] - pointY[x]) * t;
+            float ez = dz - (pointZ[x + 1] - pointZ[x]) * t;
+            float distance = ex * ex + ey * ey + ez * ez;
+            if (distance < closest) {
+                closest = distance;
+                result = start + t * length;
             }
+            start = arcLengths[x];
         }
         return result;
     }
 
     @Override
-    public float maxDistance() {
-        return arcLengths[arcLengths.length - 1];
+    public void bounds(int index, Vector3f min, Vector3f max) {
+        min.set(Math.min(pointX[index], pointX[index + 1]), Math.min(pointY[index], pointY[index + 1]),
+            Math.min(pointZ[index], pointZ[index + 1]));
+        max.set(Math.max(pointX[index], pointX[index + 1]), Math.max(pointY[index], pointY[index + 1]),
+            Math.max(pointZ[index], pointZ[index + 1]));
+    }
+
+    @Override
+    public void bounds(Vector3f min, Vector3f max) {
+        if (pointX == null) {
+            min.zero();
+            max.zero();
+            return;
+        }
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        for (int x = 0; x < pointX.length; x++) {
+            min.set(Math.min(min.x, pointX[x]), Math.min(min.y, pointY[x]), Math.min(min.z, pointZ[x]));
+            max.set(Math.max(max.x, pointX[x]), Math.max(max.y, pointY[x]), Math.max(max.z, pointZ[x]));
+        }
     }
 
     @Override
-    public Vector3f tangent(int index, float t) {
-        return new Vector3f(tangents[index]);
+    public float maxDistance() {
+        return arcLengths[arcLengths.length - 1];
     }
 
     @Override
-    public Vector3f tangent(int index, float t, Quaternionf rotation) {
-        return rotation.transform(this.tangent(index, t));
+    public Vector3f tangent(int index, float t, Vector3f dest) {
+        return dest.set(tangentX[index], tangentY[index], tangentZ[index]);
     }
 
     @Override
-    public Vector3f point(int index, float t) {
+    public Vector3f point(int index, float t, Vector3f dest) {
         float value = Math.clamp(t, 0, 1f);
-        return new Vector3f(linearPoints[index].point).add(new Vector3f(this.arc[index]).mul(value));
+        return dest.set(
+            pointX[index] + (pointX[index + 1] - pointX[index]) * value,
+            pointY[index] + (pointY[index + 1] - pointY[index]) * value,
+            pointZ[index] + (pointZ[index + 1] - pointZ[index]) * value);
     }
 
     @Override
-    public Vector3f point(int index, float t, Vector3f position, Quaternionf rotation) {
-        return rotation.transform(point(index, t)).add(position);
+    public Vector3f normal(int index, float t, Vector3f dest) {
+        float tx = tangentX[index];
+        float ty = tangentY[index];
+        float tz = tangentZ[index];
+
+        float n1x = ty * binormalZ[index] - tz * binormalY[index];
+        float n1y = tz * binormalX[index] - tx * binormalZ[index];
+        float n1z = tx * binormalY[index] - ty * binormalX[index];
+        float n2x = ty * binormalZ[index + 1] - tz * binormalY[index + 1];
+        float n2y = tz * binormalX[index + 1] - tx * binormalZ[index + 1];
+        float n2z = tx * binormalY[index + 1] - ty * binormalX[index + 1];
+
+        return dest.set(n1x + (n2x - n1x) * t, n1y + (n2y - n1y) * t, n1z + (n2z - n1z) * t);
     }
 
     @Override
-    public Vector3f normal(int index, float t) {
-        Vector3f b1 = linearPoints[index].binormal;
-        Vector3f b2 = linearPoints[index + 1].binormal;
-
-        Vector3f n1 = tangents[index].cross(b1, new Vector3f());
-        Vector3f n2 = tangents[index].cross(b2, new Vector3f());
-
-        return n1.lerp(n2, t);
+    public Vector3f binormal(int index, float t, Vector3f dest) {
+        return dest.set(
+            binormalX[index] + (binormalX[index + 1] - binormalX[index]) * t,
+            binormalY[index] + (binormalY[index + 1] - binormalY[index]) * t,
+            binormalZ[index] + (binormalZ[index + 1] - binormalZ[index]) * t);
     }
 
     @Override
-    public Vector3f normal(int index, float t, Quaternionf rotation) {
-        return rotation.transform(normal(index, t));
+    public float curvature(int index, float t) {
+        return 0;
     }
 }
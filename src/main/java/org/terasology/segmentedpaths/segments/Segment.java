@@ -16,13 +16,25 @@
 package org.terasology.segmentedpaths.segments;
 
 import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
 /**
  * Represents a segment traversable by an entity that has the {@link PathFollowerComponent}. Contiguous segments are put together to
  * form paths.
+ * <p>
+ * The allocating and the {@code dest} variants of {@code tangent}, {@code point} and {@code normal} are implemented in
+ * terms of each other, so implementations have to override at least one of each pair; overriding the {@code dest}
+ * variants avoids the allocations. The bounds and the curvature are estimated from samples of the segment unless
+ * overridden with exact values.
  */
 public interface Segment {
+    /**
+     * The step in subsegment position between the samples the default {@link #curvature(int, float)} is estimated from.
+     */
+    float CURVATURE_STEP = 1e-3f;
+
     /**
      * Returns the index of the subsegment at the given position on the segment.
      *
@@ -31,6 +43,18 @@ public interface Segment {
      */
     int index(float segmentPosition);
 
+    /**
+     * Returns the index of the subsegment at the given position on the segment, starting the search from a previously
+     * returned index. Callers that move along the segment in small steps should prefer this over {@link #index(float)}.
+     *
+     * @param segmentPosition The position on the segment.
+     * @param hint The subsegment index last returned for this segment.
+     * @return The subsegment index.
+     */
+    default int index(float segmentPosition, int hint) {
+        return index(segmentPosition);
+    }
+
     /**
      * Returns the highest possible subsegment index.
      *
@@ -58,6 +82,59 @@ public interface Segment {
      */
     float nearestSegmentPosition(Vector3f pos, Vector3f segmentPosition, Quaternionf segmentRotation);
 
+    /**
+     * Stores the corners of the smallest box enclosing the subsegment with the given index, in the space of the segment,
+     * in {@code min} and {@code max}. By default the box encloses points sampled along the subsegment, which may miss
+     * extrema between the samples.
+     *
+     * @param index The index of the subsegment.
+     * @param min Will hold the lowest corner of the box.
+     * @param max Will hold the highest corner of the box.
+     */
+    default void bounds(int index, Vector3f min, Vector3f max) {
+        SegmentBounds.sample(this, index, min, max);
+    }
+
+    /**
+     * Stores the corners of an axis aligned box enclosing the subsegment with the given index of the translated and
+     * rotated segment in {@code min} and {@code max}.
+     *
+     * @param index The index of the subsegment.
+     * @param position The position of the segment.
+     * @param rotation The rotation of the segment.
+     * @param min Will hold the lowest corner of the box.
+     * @param max Will hold the highest corner of the box.
+     */
+    default void bounds(int index, Vector3fc position, Quaternionfc rotation, Vector3f min, Vector3f max) {
+        bounds(index, min, max);
+        SegmentBounds.transform(position, rotation, min, max);
+    }
+
+    /**
+     * Stores the corners of the smallest box enclosing the whole segment, in the space of the segment, in {@code min} and
+     * {@code max}. By default this is the union of the boxes of all subsegments.
+     *
+     * @param min Will hold the lowest corner of the box.
+     * @param max Will hold the highest corner of the box.
+     */
+    default void bounds(Vector3f min, Vector3f max) {
+        SegmentBounds.union(this, min, max);
+    }
+
+    /**
+     * Stores the corners of an axis aligned box enclosing the translated and rotated segment in {@code min} and
+     * {@code max}.
+     *
+     * @param position The position of the segment.
+     * @param rotation The rotation of the segment.
+     * @param min Will hold the lowest corner of the box.
+     * @param max Will hold the highest corner of the box.
+     */
+    default void bounds(Vector3fc position, Quaternionfc rotation, Vector3f min, Vector3f max) {
+        bounds(min, max);
+        SegmentBounds.transform(position, rotation, min, max);
+    }
+
     /**
      * Returns the length of this segment.
      *
@@ -72,7 +149,21 @@ public interface Segment {
      * @param t The subsegment position.
      * @return The tangent to the segment.
      */
-    Vector3f tangent(int index, float t);
+    default Vector3f tangent(int index, float t) {
+        return tangent(index, t, new Vector3f());
+    }
+
+    /**
+     * Stores the tangent to the segment at the given subsegment index and position in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f tangent(int index, float t, Vector3f dest) {
+        return dest.set(tangent(index, t));
+    }
 
     /**
      * Returns the tangent to the rotated segment at the given subsegment index and position.
@@ -82,7 +173,22 @@ public interface Segment {
      * @param rotation The rotation of the segment.
      * @return The tangent to the segment.
      */
-    Vector3f tangent(int index, float t, Quaternionf rotation);
+    default Vector3f tangent(int index, float t, Quaternionf rotation) {
+        return tangent(index, t, rotation, new Vector3f());
+    }
+
+    /**
+     * Stores the tangent to the rotated segment at the given subsegment index and position in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param rotation The rotation of the segment.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f tangent(int index, float t, Quaternionfc rotation, Vector3f dest) {
+        return rotation.transform(tangent(index, t, dest));
+    }
 
     /**
      * Returns the position of a point on the segment at the given subsegment index and position.
@@ -91,7 +197,21 @@ public interface Segment {
      * @param t The subsegment position.
      * @return The position of the point on the segment.
      */
-    Vector3f point(int index, float t);
+    default Vector3f point(int index, float t) {
+        return point(index, t, new Vector3f());
+    }
+
+    /**
+     * Stores the position of a point on the segment at the given subsegment index and position in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f point(int index, float t, Vector3f dest) {
+        return dest.set(point(index, t));
+    }
 
     /**
      * Returns the position of a point on the translated and rotated segment at the given subsegment index and position.
@@ -102,7 +222,24 @@ public interface Segment {
      * @param rotation The rotation of the segment.
      * @return The position of the point on the segment.
      */
-    Vector3f point(int index, float t, Vector3f position, Quaternionf rotation);
+    default Vector3f point(int index, float t, Vector3f position, Quaternionf rotation) {
+        return point(index, t, position, rotation, new Vector3f());
+    }
+
+    /**
+     * Stores the position of a point on the translated and rotated segment at the given subsegment index and position in
+     * {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param position The position of the segment.
+     * @param rotation The rotation of the segment.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f point(int index, float t, Vector3fc position, Quaternionfc rotation, Vector3f dest) {
+        return rotation.transform(point(index, t, dest)).add(position);
+    }
 
     /**
      * Returns the normal to the segment at the given subsegment index and point.
@@ -111,7 +248,21 @@ public interface Segment {
      * @param t The subsegment position.
      * @return The normal to the segment.
      */
-    Vector3f normal(int index, float t);
+    default Vector3f normal(int index, float t) {
+        return normal(index, t, new Vector3f());
+    }
+
+    /**
+     * Stores the normal to the segment at the given subsegment index and point in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f normal(int index, float t, Vector3f dest) {
+        return dest.set(normal(index, t));
+    }
 
     /**
      * Returns the normal to the rotated segment at the given subsegment index and point.
@@ -121,6 +272,90 @@ public interface Segment {
      * @param rotation The rotation of the segment.
      * @return The normal to the segment.
      */
-    Vector3f normal(int index, float t, Quaternionf rotation);
+    default Vector3f normal(int index, float t, Quaternionf rotation) {
+        return normal(index, t, rotation, new Vector3f());
+    }
+
+    /**
+     * Stores the normal to the rotated segment at the given subsegment index and point in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param rotation The rotation of the segment.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f normal(int index, float t, Quaternionfc rotation, Vector3f dest) {
+        return rotation.transform(normal(index, t, dest));
+    }
+
+    /**
+     * Returns the binormal to the segment at the given subsegment index and point.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @return The binormal to the segment.
+     */
+    default Vector3f binormal(int index, float t) {
+        return binormal(index, t, new Vector3f());
+    }
+
+    /**
+     * Stores the binormal to the segment at the given subsegment index and point in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f binormal(int index, float t, Vector3f dest) {
+        // the frame is right handed with tangent x binormal = normal, so binormal = normal x tangent
+        Vector3f tangent = tangent(index, t);
+        return normal(index, t, dest).cross(tangent).normalize();
+    }
+
+    /**
+     * Returns the binormal to the rotated segment at the given subsegment index and point.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param rotation The rotation of the segment.
+     * @return The binormal to the segment.
+     */
+    default Vector3f binormal(int index, float t, Quaternionf rotation) {
+        return binormal(index, t, rotation, new Vector3f());
+    }
+
+    /**
+     * Stores the binormal to the rotated segment at the given subsegment index and point in {@code dest}.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @param rotation The rotation of the segment.
+     * @param dest Will hold the result.
+     * @return dest
+     */
+    default Vector3f binormal(int index, float t, Quaternionfc rotation, Vector3f dest) {
+        return rotation.transform(binormal(index, t, dest));
+    }
+
+    /**
+     * Returns the curvature of the segment at the given subsegment index and point, which is the reciprocal of the
+     * radius of the circle best fitting the segment there. Rotating the segment does not change its curvature.
+     *
+     * @param index The index of the subsegment.
+     * @param t The subsegment position.
+     * @return The curvature, 0 where the segment is straight.
+     */
+    default float curvature(int index, float t) {
+        // the angle between the tangents at two nearby points over the distance between the points
+        float a = Math.max(t - CURVATURE_STEP, 0);
+        float b = Math.min(t + CURVATURE_STEP, 1);
+        float distance = point(index, a).distance(point(index, b));
+        if (distance < 1e-6f) {
+            return 0;
+        }
+        return tangent(index, a).angle(tangent(index, b)) / distance;
+    }
 
 }
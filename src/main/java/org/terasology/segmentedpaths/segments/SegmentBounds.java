@@ -0,0 +1,94 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.segments;
+
+import org.joml.Math;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Helpers for the axis aligned boxes segments are bounded by.
+ */
+final class SegmentBounds {
+    /**
+     * Number of intervals a subsegment is sampled at by {@link #sample}.
+     */
+    private static final int SAMPLES = 32;
+
+    private SegmentBounds() {
+    }
+
+    /**
+     * Stores the box enclosing points sampled evenly along the subsegment with the given index in {@code min} and
+     * {@code max}.
+     */
+    static void sample(Segment segment, int index, Vector3f min, Vector3f max) {
+        Vector3f point = new Vector3f();
+        segment.point(index, 0, point);
+        min.set(point);
+        max.set(point);
+        for (int x = 1; x <= SAMPLES; x++) {
+            segment.point(index, (float) x / SAMPLES, point);
+            min.min(point);
+            max.max(point);
+        }
+    }
+
+    /**
+     * Stores the union of the boxes of all subsegments of the given segment in {@code min} and {@code max}.
+     */
+    static void union(Segment segment, Vector3f min, Vector3f max) {
+        Vector3f low = new Vector3f();
+        Vector3f high = new Vector3f();
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        for (int x = 0; x <= segment.maxIndex(); x++) {
+            segment.bounds(x, low, high);
+            min.min(low);
+            max.max(high);
+        }
+    }
+
+    /**
+     * Replaces the box spanned by {@code min} and {@code max} with the axis aligned box enclosing it after rotating and
+     * then translating it.
+     *
+     * @param position The translation applied after the rotation
+     * @param rotation The rotation, which must be of unit length
+     * @param min The lowest corner of the box, will hold the lowest corner of the transformed box
+     * @param max The highest corner of the box, will hold the highest corner of the transformed box
+     */
+    static void transform(Vector3fc position, Quaternionfc rotation, Vector3f min, Vector3f max) {
+        float cx = (min.x + max.x) * 0.5f;
+        float cy = (min.y + max.y) * 0.5f;
+        float cz = (min.z + max.z) * 0.5f;
+        float ex = (max.x - min.x) * 0.5f;
+        float ey = (max.y - min.y) * 0.5f;
+        float ez = (max.z - min.z) * 0.5f;
+
+        float qx = rotation.x();
+        float qy = rotation.y();
+        float qz = rotation.z();
+        float qw = rotation.w();
+        float m00 = 1f - 2f * (qy * qy + qz * qz);
+        float m01 = 2f * (qx * qy - qz * qw);
+        float m02 = 2f * (qx * qz + qy * qw);
+        float m10 = 2f * (qx * qy + qz * qw);
+        float m11 = 1f - 2f * (qx * qx + qz * qz);
+        float m12 = 2f * (qy * qz - qx * qw);
+        float m20 = 2f * (qx * qz - qy * qw);
+        float m21 = 2f * (qy * qz + qx * qw);
+        float m22 = 1f - 2f * (qx * qx + qy * qy);
+
+        // the center is rotated, the half extents are projected onto the world axes
+        float wx = m00 * cx + m01 * cy + m02 * cz + position.x();
+        float wy = m10 * cx + m11 * cy + m12 * cz + position.y();
+        float wz = m20 * cx + m21 * cy + m22 * cz + position.z();
+        float hx = Math.abs(m00) * ex + Math.abs(m01) * ey + Math.abs(m02) * ez;
+        float hy = Math.abs(m10) * ex + Math.abs(m11) * ey + Math.abs(m12) * ez;
+        float hz = Math.abs(m20) * ex + Math.abs(m21) * ey + Math.abs(m22) * ez;
+        min.set(wx - hx, wy - hy, wz - hz);
+        max.set(wx + hx, wy + hy, wz + hz);
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.segments;
+
+/**
+ * Lookup helpers over the monotonic cumulative arc length tables kept by the {@link Segment} implementations.
+ */
+final class SegmentSearch {
+
+    private SegmentSearch() {
+    }
+
+    /**
+     * Returns the index of the first entry in {@code arcLengths} that is greater than the given position, or the last index
+     * if there is none.
+     *
+     * @param arcLengths Cumulative arc lengths, in ascending order.
+     * @param segmentPosition The position on the segment.
+     * @return The subsegment index.
+     */
+    static int index(float[] arcLengths, float segmentPosition) {
+        if (segmentPosition < 0) {
+            return 0;
+        }
+        int low = 0;
+        int high = arcLengths.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segmentPosition < arcLengths[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Same as {@link #index(float[], float)}, but checks the given hint and its successor before falling back to a binary
+     * search. A follower moving steadily along the segment will almost always hit one of the two.
+     *
+     * @param arcLengths Cumulative arc lengths, in ascending order.
+     * @param segmentPosition The position on the segment.
+     * @param hint The last known subsegment index.
+     * @return The subsegment index.
+     */
+    static int index(float[] arcLengths, float segmentPosition, int hint) {
+        if (hint >= 0 && hint < arcLengths.length) {
+            if (contains(arcLengths, hint, segmentPosition)) {
+                return hint;
+            }
+            if (hint + 1 < arcLengths.length && contains(arcLengths, hint + 1, segmentPosition)) {
+                return hint + 1;
+            }
+        }
+        return index(arcLengths, segmentPosition);
+    }
+
+    private static boolean contains(float[] arcLengths, int index, float segmentPosition) {
+        boolean aboveStart = index == 0 || segmentPosition >= arcLengths[index - 1];
+        boolean belowEnd = index == arcLengths.length - 1 || segmentPosition < arcLengths[index];
+        return aboveStart && belowEnd;
+    }
+
+    /**
+     * Inverts a table of ascending values, such as cumulative distances. Returns the fractional index at which the given
+     * distance is reached, interpolating linearly between the two samples enclosing it.
+     *
+     * @param samples Array holding the table.
+     * @param offset Index of the first sample of the table in {@code samples}.
+     * @param count Number of samples in the table, in ascending order.
+     * @param distance The distance to look up.
+     * @return The fractional sample index, between 0 and {@code count - 1}.
+     */
+    static float inverse(float[] samples, int offset, int count, float distance) {
+        int last = count - 1;
+        if (!(distance > samples[offset])) {
+            return 0;
+        }
+        if (distance >= samples[offset + last]) {
+            return last;
+        }
+        int low = 0;
+        int high = last;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (distance < samples[offset + mid]) {
+                high = mid;
+            } else {
+                low = mid;
+            }
+        }
+        float span = samples[offset + high] - samples[offset + low];
+        if (span <= 0) {
+            return low;
+        }
+        return low + (distance - samples[offset + low]) / span;
+    }
+
+    /**
+     * Looks up a value in one ascending table and returns the corresponding value of a second table, interpolating
+     * linearly between the two entries enclosing it.
+     *
+     * @param from Array holding the table to search, in ascending order.
+     * @param to Array holding the table to read the result from.
+     * @param offset Index of the first entry of both tables.
+     * @param count Number of entries in the tables, at least two.
+     * @param value The value to look up in {@code from}.
+     * @return The interpolated value from {@code to}.
+     */
+    static float interpolate(float[] from, float[] to, int offset, int count, float value) {
+        float fraction = inverse(from, offset, count, value);
+        int lower = Math.min((int) fraction, count - 2);
+        return to[offset + lower] + (fraction - lower) * (to[offset + lower + 1] - to[offset + lower]);
+    }
+}
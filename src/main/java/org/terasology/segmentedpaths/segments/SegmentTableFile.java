@@ -0,0 +1,194 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.segments;
+
+import org.joml.Vector3fc;
+import org.terasology.segmentedpaths.components.CurvedPathComponent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The contents of a file holding the precomputed tables of curved segments, so they do not have to be calculated again on
+ * the next start. The file is read into memory as a whole and segments are created from it on demand; reading and
+ * writing the file itself is left to the caller.
+ * <p>
+ * The file is little endian and starts with a magic number, the format version and the number of entries. Each entry is
+ * the key of its geometry, the length of its tables in bytes and the tables as written by {@link CurvedSegment}. The
+ * tables include the curves they were calculated for, so an entry is only used for exactly the same curves; keys only
+ * need to tell geometries apart well enough to make that check rare. A file of another format version or a damaged file
+ * is ignored, as is a single damaged entry, and replaced on the next {@link #write(OutputStream)}.
+ * <p>
+ * Only the entries that were loaded or added since the file was read are written back, so tables of paths that no longer
+ * exist are dropped.
+ */
+public final class SegmentTableFile {
+    /**
+     * The version of the layout of the file, to be increased whenever the layout or the contents of the tables change.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    // "SPTF" read as a little endian int
+    private static final int MAGIC = 0x46545053;
+    private static final int HEADER_BYTES = Integer.BYTES * 3;
+    private static final int ENTRY_HEADER_BYTES = Long.BYTES + Integer.BYTES;
+
+    // the tables of each key in the file, empty if the file was missing or not usable
+    private final Map<Long, ByteBuffer> entries = new HashMap<>();
+    // keys of the stored entries loaded since the file was read
+    private final Set<Long> used = new HashSet<>();
+    // segments calculated since the file was read
+    private final Map<Long, CurvedSegment> pending = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty table file, for when there is no file to read yet.
+     */
+    public SegmentTableFile() {
+    }
+
+    /**
+     * Reads a table file. If the contents are not of the current format version or damaged, the returned instance starts
+     * empty.
+     *
+     * @param in The contents of the file, read to its end but not closed
+     * @return The table file
+     * @throws IOException If the contents could not be read
+     */
+    public static SegmentTableFile read(InputStream in) throws IOException {
+        SegmentTableFile tableFile = new SegmentTableFile();
+        tableFile.index(ByteBuffer.wrap(in.readAllBytes()).order(ByteOrder.LITTLE_ENDIAN));
+        return tableFile;
+    }
+
+    /**
+     * Creates a segment from the tables stored for the given key, if they were calculated for exactly the given curves
+     * and binormal at the default tolerance.
+     *
+     * @param key The key of the geometry
+     * @param curves The curves of the segment
+     * @param startingBinormal The binormal at the start of the segment
+     * @return The segment, or null if no matching tables are stored
+     */
+    public synchronized CurvedSegment load(long key, CurvedPathComponent.CubicBezier[] curves,
+                                           Vector3fc startingBinormal) {
+        ByteBuffer tables = entries.get(key);
+        if (tables == null) {
+            CurvedSegment segment = pending.get(key);
+            if (segment != null && segment.isFor(curves, startingBinormal, CurvedSegment.DEFAULT_ARC_TOLERANCE)) {
+                return segment;
+            }
+            return null;
+        }
+        CurvedSegment segment;
+        try {
+            segment = CurvedSegment.readTables(tables.duplicate().order(ByteOrder.LITTLE_ENDIAN), curves,
+                startingBinormal, CurvedSegment.DEFAULT_ARC_TOLERANCE);
+        } catch (RuntimeException e) {
+            // a damaged entry is dropped, the tables are calculated again and replace it on the next write
+            entries.remove(key);
+            return null;
+        }
+        if (segment != null) {
+            used.add(key);
+        }
+        return segment;
+    }
+
+    /**
+     * Queues the tables of the given segment to be written on the next {@link #write(OutputStream)}, unless matching
+     * tables are already stored for the key.
+     *
+     * @param key The key of the geometry
+     * @param segment The segment, which must use the default tolerance
+     */
+    public synchronized void add(long key, CurvedSegment segment) {
+        if (segment.maxIndex() >= 0 && !used.contains(key)) {
+            // tables stored under the key but for other curves are replaced
+            entries.remove(key);
+            pending.putIfAbsent(key, segment);
+        }
+    }
+
+    /**
+     * Returns whether the file would change if written: tables were added, or stored tables were not loaded and would
+     * be dropped.
+     */
+    public synchronized boolean isDirty() {
+        return !pending.isEmpty() || used.size() != entries.size();
+    }
+
+    /**
+     * Writes the loaded and the added tables. Afterwards this instance holds what was written, as if it had been read
+     * back.
+     *
+     * @param out The stream to write the file to, which is not closed
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void write(OutputStream out) throws IOException {
+        long size = HEADER_BYTES;
+        for (Long key : used) {
+            size += ENTRY_HEADER_BYTES + entries.get(key).remaining();
+        }
+        for (CurvedSegment segment : pending.values()) {
+            size += ENTRY_HEADER_BYTES + segment.tableBytes();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Segment tables of " + size + " bytes do not fit into a file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(used.size() + pending.size());
+        for (Long key : used) {
+            // entries already stored are copied as they are
+            ByteBuffer tables = entries.get(key);
+            buffer.putLong(key).putInt(tables.remaining()).put(tables.duplicate());
+        }
+        for (Map.Entry<Long, CurvedSegment> entry : pending.entrySet()) {
+            buffer.putLong(entry.getKey()).putInt(entry.getValue().tableBytes());
+            entry.getValue().writeTables(buffer);
+        }
+        out.write(buffer.array());
+
+        buffer.flip();
+        index(buffer);
+        used.addAll(entries.keySet());
+        pending.clear();
+    }
+
+    private void index(ByteBuffer buffer) {
+        entries.clear();
+        used.clear();
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return;
+        }
+        int count = buffer.getInt();
+        Map<Long, ByteBuffer> found = new HashMap<>();
+        for (int x = 0; x < count; x++) {
+            if (buffer.remaining() < ENTRY_HEADER_BYTES) {
+                return;
+            }
+            long key = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer tables = buffer.slice();
+            tables.limit(length);
+            found.putIfAbsent(key, tables.asReadOnlyBuffer());
+            buffer.position(buffer.position() + length);
+        }
+        if (buffer.hasRemaining()) {
+            // a truncated or otherwise damaged file is dropped as a whole rather than trusting part of it
+            return;
+        }
+        entries.putAll(found);
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.controllers;
+
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.segmentedpaths.SegmentMeta;
+import org.terasology.segmentedpaths.components.CurvedPathComponent;
+import org.terasology.segmentedpaths.segments.CurvedSegment;
+import org.terasology.segmentedpaths.segments.Segment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class SegmentSpatialIndexTest {
+    private static final float RADIUS = 12f;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(17);
+        Prefab prefab = mock(Prefab.class);
+        SegmentSpatialIndex index = new SegmentSpatialIndex();
+        List<Placed> placed = new ArrayList<>();
+        for (int x = 0; x < 300; x++) {
+            Placed segment = new Placed(mock(EntityRef.class), randomSegment(random),
+                new Vector3f(random.nextFloat() * 200 - 100, random.nextFloat() * 60 - 30,
+                    random.nextFloat() * 200 - 100),
+                new Quaternionf().rotateXYZ(random.nextFloat() * 6, random.nextFloat() * 6, random.nextFloat() * 6));
+            placed.add(segment);
+            index.add(segment.entity, prefab, segment.segment, segment.position, segment.rotation);
+        }
+        assertEquals(300, index.size());
+
+        SegmentMeta found = new SegmentMeta();
+        Vector3f point = new Vector3f();
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            Vector3f pos = new Vector3f(random.nextFloat() * 220 - 110, random.nextFloat() * 80 - 40,
+                random.nextFloat() * 220 - 110);
+            float closest = Float.MAX_VALUE;
+            for (Placed segment : placed) {
+                closest = Math.min(closest, segment.distance(pos, segment.segment.nearestSegmentPosition(pos,
+                    segment.position, segment.rotation), point));
+            }
+
+            if (closest > RADIUS + 1e-3f) {
+                assertFalse(index.nearest(pos, RADIUS, found), "found a segment outside the radius around " + pos);
+            } else if (closest < RADIUS - 1e-3f) {
+                assertTrue(index.nearest(pos, RADIUS, found), "missed a segment within the radius around " + pos);
+                Placed segment = placed.stream().filter(p -> p.entity == found.association).findFirst().orElseThrow();
+                assertEquals(closest, segment.distance(pos, found.position, point), 1e-4f, "nearest point to " + pos);
+                hits++;
+            }
+        }
+        // most queries should land near a segment, or the comparison above proves little
+        assertTrue(hits > 250, "only " + hits + " queries found a segment");
+    }
+
+    @Test
+    public void removedSegmentsAreNotFound() {
+        Random random = new Random(3);
+        SegmentSpatialIndex index = new SegmentSpatialIndex();
+        EntityRef entity = mock(EntityRef.class);
+        // placed across a chunk border so the segment is stored in several cells
+        index.add(entity, mock(Prefab.class), randomSegment(random), new Vector3f(31, 0, 31), new Quaternionf());
+        assertTrue(index.contains(entity));
+        assertTrue(index.nearest(new Vector3f(31, 0, 31), RADIUS, new SegmentMeta()));
+
+        assertTrue(index.remove(entity));
+        assertFalse(index.contains(entity));
+        assertEquals(0, index.size());
+        assertFalse(index.nearest(new Vector3f(31, 0, 31), RADIUS, new SegmentMeta()));
+        assertFalse(index.remove(entity));
+    }
+
+    private static Segment randomSegment(Random random) {
+        CurvedPathComponent.CubicBezier curve = new CurvedPathComponent.CubicBezier();
+        curve.f1 = randomPoint(random);
+        curve.f2 = randomPoint(random);
+        curve.f3 = randomPoint(random);
+        curve.f4 = randomPoint(random);
+        return new CurvedSegment(new CurvedPathComponent.CubicBezier[]{curve}, new Vector3f(0, 1, 0));
+    }
+
+    private static Vector3f randomPoint(Random random) {
+        return new Vector3f(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+    }
+
+    private static final class Placed {
+        private final EntityRef entity;
+        private final Segment segment;
+        private final Vector3f position;
+        private final Quaternionf rotation;
+
+        private Placed(EntityRef entity, Segment segment, Vector3f position, Quaternionf rotation) {
+            this.entity = entity;
+            this.segment = segment;
+            this.position = position;
+            this.rotation = rotation;
+        }
+
+        private float distance(Vector3f pos, float segmentPosition, Vector3f point) {
+            int index = segment.index(segmentPosition);
+            segment.point(index, segment.getSegmentPosition(index, segmentPosition), position, rotation, point);
+            return point.distance(pos);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.segmentedpaths.segments;
+
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+import org.terasology.segmentedpaths.components.CurvedPathComponent;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CurvedSegmentTest {
+    private static final Vector3f UP = new Vector3f(0, 1, 0);
+
+    @Test
+    public void arcLengthTableMatchesExactArcLength() {
+        Random random = new Random(15);
+        for (int x = 0; x < 200; x++) {
+            CurvedPathComponent.CubicBezier curve = randomCurve(random);
+            CurvedSegment segment = new CurvedSegment(new CurvedPathComponent.CubicBezier[]{curve}, UP);
+            assertEquals(arcLength(curve, 1), segment.maxDistance(), 1e-3);
+            for (int i = 0; i <= 200; i++) {
+                float distance = segment.maxDistance() * i / 200;
+                float t = segment.getSegmentPosition(0, distance);
+                assertEquals(distance, arcLength(curve, t), 2 * CurvedSegment.DEFAULT_ARC_TOLERANCE,
+                    "distance along curve " + x + " at t " + t);
+            }
+        }
+    }
+
+    @Test
+    public void arcLengthTableCoversEveryCurveOfASegment() {
+        CurvedPathComponent.CubicBezier first = curve(0, 0, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0);
+        CurvedPathComponent.CubicBezier second = curve(1, 0, 0, 4, 0, 0, 1, 0, 3, 4, 0, 3);
+        CurvedSegment segment = new CurvedSegment(new CurvedPathComponent.CubicBezier[]{first, second}, UP);
+        float firstLength = (float) arcLength(first, 1);
+        assertEquals(0, segment.index(firstLength * 0.5f));
+        assertEquals(1, segment.index(firstLength + 0.5f));
+        assertEquals(firstLength + arcLength(second, 1), segment.maxDistance(), 1e-3);
+        float t = segment.getSegmentPosition(1, firstLength + 2f);
+        assertEquals(2f, arcLength(second, t), 2 * CurvedSegment.DEFAULT_ARC_TOLERANCE);
+    }
+
+    @Test
+    public void nearestSegmentPositionMatchesBruteForce() {
+        Random random = new Random(17);
+        Vector3f origin = new Vector3f();
+        Quaternionf identity = new Quaternionf();
+        Vector3f point = new Vector3f();
+        for (int x = 0; x < 200; x++) {
+            CurvedPathComponent.CubicBezier[] curves = {randomCurve(random), randomCurve(random)};
+            curves[1].f1 = new Vector3f(curves[0].f4);
+            CurvedSegment segment = new CurvedSegment(curves, UP);
+            for (int i = 0; i < 20; i++) {
+                Vector3f pos = new Vector3f(random.nextFloat() * 16 - 8, random.nextFloat() * 16 - 8,
+                    random.nextFloat() * 16 - 8);
+                float closest = Float.MAX_VALUE;
+                for (int c = 0; c <= segment.maxIndex(); c++) {
+                    for (int step = 0; step <= 4000; step++) {
+                        closest = Math.min(closest, segment.point(c, step / 4000f, point).distance(pos));
+                    }
+                }
+
+                float position = segment.nearestSegmentPosition(pos, origin, identity);
+                int index = segment.index(position);
+                float projected = segment.point(index, segment.getSegmentPosition(index, position), point)
+                    .distance(pos);
+                assertTrue(projected <= closest + 1e-3f,
+                    "projection of " + pos + " on segment " + x + " at " + projected + ", sampled " + closest);
+            }
+        }
+    }
+
+    @Test
+    public void boundsEncloseSampledCurvesTightly() {
+        Random random = new Random(18);
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Vector3f sampledMin = new Vector3f();
+        Vector3f sampledMax = new Vector3f();
+        Vector3f point = new Vector3f();
+        for (int x = 0; x < 500; x++) {
+            CurvedSegment segment = new CurvedSegment(new CurvedPathComponent.CubicBezier[]{randomCurve(random)}, UP);
+            segment.bounds(0, min, max);
+            sampledMin.set(Float.MAX_VALUE);
+            sampledMax.set(-Float.MAX_VALUE);
+            for (int step = 0; step <= 2000; step++) {
+                segment.point(0, step / 2000f, point);
+                sampledMin.min(point);
+                sampledMax.max(point);
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                assertTrue(min.get(axis) <= sampledMin.get(axis) + 1e-5f, "lower bound of curve " + x);
+                assertTrue(max.get(axis) >= sampledMax.get(axis) - 1e-5f, "upper bound of curve " + x);
+                // the extrema lie within half a sample spacing of a sample, where the curve is close to flat
+                assertEquals(sampledMin.get(axis), min.get(axis), 1e-4f, "lower bound of curve " + x);
+                assertEquals(sampledMax.get(axis), max.get(axis), 1e-4f, "upper bound of curve " + x);
+            }
+        }
+    }
+
+    @Test
+    public void transformedBoundsEncloseTheWholeSegment() {
+        Random random = new Random(18);
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Vector3f point = new Vector3f();
+        for (int x = 0; x < 100; x++) {
+            CurvedPathComponent.CubicBezier[] curves = {randomCurve(random), randomCurve(random)};
+            curves[1].f1 = new Vector3f(curves[0].f4);
+            CurvedSegment segment = new CurvedSegment(curves, UP);
+            Vector3f position = new Vector3f(random.nextFloat() * 100, random.nextFloat() * 100,
+                random.nextFloat() * 100);
+            Quaternionf rotation = new Quaternionf().rotateXYZ(random.nextFloat() * 6, random.nextFloat() * 6,
+                random.nextFloat() * 6);
+            segment.bounds(position, rotation, min, max);
+            for (int c = 0; c <= segment.maxIndex(); c++) {
+                for (int step = 0; step <= 500; step++) {
+                    segment.point(c, step / 500f, position, rotation, point);
+                    for (int axis = 0; axis < 3; axis++) {
+                        float value = point.get(axis);
+                        assertTrue(value >= min.get(axis) - 1e-4f && value <= max.get(axis) + 1e-4f,
+                            "point of segment " + x + " outside of its bounds");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void framesAreOrthonormal() {
+        Random random = new Random(19);
+        Vector3f tangent = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f binormal = new Vector3f();
+        for (int x = 0; x < 100; x++) {
+            CurvedSegment segment = new CurvedSegment(smoothCurves(random), UP);
+            for (int c = 0; c <= segment.maxIndex(); c++) {
+                for (int step = 0; step <= 500; step++) {
+                    float t = step / 500f;
+                    segment.tangent(c, t, tangent);
+                    segment.normal(c, t, normal);
+                    segment.binormal(c, t, binormal);
+                    assertEquals(1f, normal.length(), 1e-4f, "normal length on segment " + x);
+                    assertEquals(1f, binormal.length(), 1e-4f, "binormal length on segment " + x);
+                    assertEquals(0f, normal.dot(tangent), 1e-4f, "normal against tangent on segment " + x);
+                    assertEquals(0f, binormal.dot(tangent), 1e-4f, "binormal against tangent on segment " + x);
+                    assertEquals(0f, binormal.dot(normal), 1e-4f, "binormal against normal on segment " + x);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void framesDoNotTwistAlongTheSegment() {
+        Random random = new Random(19);
+        int steps = 2000;
+        Vector3f normal = new Vector3f();
+        Vector3f binormal = new Vector3f();
+        Vector3f previous = new Vector3f();
+        Vector3f change = new Vector3f();
+        Vector3f point = new Vector3f();
+        Vector3f previousPoint = new Vector3f();
+        for (int x = 0; x < 100; x++) {
+            CurvedSegment segment = new CurvedSegment(smoothCurves(random), UP);
+
+            // the curves meet with the same tangent, so the frame has to carry over the joint unchanged
+            segment.normal(0, 1f, previous);
+            segment.normal(1, 0f, normal);
+            assertEquals(0f, previous.distance(normal), 1e-4f, "normal at the joint of segment " + x);
+
+            for (int c = 0; c <= segment.maxIndex(); c++) {
+                segment.normal(c, 0f, previous);
+                segment.point(c, 0f, previousPoint);
+                for (int step = 1; step <= steps; step++) {
+                    segment.normal(c, step / (float) steps, normal);
+                    segment.binormal(c, (step - 0.5f) / steps, binormal);
+                    float distance = segment.point(c, step / (float) steps, point).distance(previousPoint);
+                    // a rotation minimizing frame only turns the normal towards or away from the tangent, so any change
+                    // along the binormal between two samples is twist around the tangent
+                    float twist = Math.abs(normal.sub(previous, change).dot(binormal)) / distance;
+                    assertEquals(0f, twist, 0.005f, "twist rate on curve " + c + " of segment " + x + " at " + step);
+                    previous.set(normal);
+                    previousPoint.set(point);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void framesKeepTheirSideAcrossCorners() {
+        // two flat curves meeting at a right angle, whose binormal has to stay up rather than be mirrored at the corner
+        CurvedPathComponent.CubicBezier first = curve(0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0);
+        CurvedPathComponent.CubicBezier second = curve(3, 0, 0, 3, 0, 1, 4, 0, 2, 4, 0, 3);
+        CurvedSegment segment = new CurvedSegment(new CurvedPathComponent.CubicBezier[]{first, second}, UP);
+        Vector3f binormal = new Vector3f();
+        for (int c = 0; c <= segment.maxIndex(); c++) {
+            for (int step = 0; step <= 10; step++) {
+                assertEquals(0f, segment.binormal(c, step / 10f, binormal).distance(UP), 1e-4f,
+                    "binormal on curve " + c + " at " + step);
+            }
+        }
+    }
+
+    static CurvedPathComponent.CubicBezier curve(float... values) {
+        CurvedPathComponent.CubicBezier curve = new CurvedPathComponent.CubicBezier();
+        curve.f1 = new Vector3f(values[0], values[1], values[2]);
+        curve.f2 = new Vector3f(values[3], values[4], values[5]);
+        curve.f3 = new Vector3f(values[6], values[7], values[8]);
+        curve.f4 = new Vector3f(values[9], values[10], values[11]);
+        return curve;
+    }
+
+    static CurvedPathComponent.CubicBezier randomCurve(Random random) {
+        float[] values = new float[12];
+        for (int x = 0; x < values.length; x++) {
+            values[x] = random.nextFloat() * 10 - 5;
+        }
+        return curve(values);
+    }
+
+    /**
+     * Two random curves meeting with the same tangent, without the cusps and near stops at which the tangent, and with
+     * it the frame, may jump.
+     */
+    static CurvedPathComponent.CubicBezier[] smoothCurves(Random random) {
+        while (true) {
+            CurvedPathComponent.CubicBezier first = randomCurve(random);
+            CurvedPathComponent.CubicBezier second = randomCurve(random);
+            second.f1 = new Vector3f(first.f4);
+            second.f2 = new Vector3f(first.f4).mul(2).sub(first.f3);
+            boolean smooth = true;
+            for (int step = 0; step <= 100 && smooth; step++) {
+                smooth = speed(first, step / 100.0) > 2 && speed(second, step / 100.0) > 2;
+            }
+            if (smooth) {
+                return new CurvedPathComponent.CubicBezier[]{first, second};
+            }
+        }
+    }
+
+    /**
+     * The length of the curve from 0 to t, by Simpson's rule on fine intervals in double precision.
+     */
+    static double arcLength(CurvedPathComponent.CubicBezier curve, double t) {
+        int steps = 4000;
+        double step = t / steps;
+        double sum = 0;
+        for (int x = 0; x < steps; x++) {
+            double a = x * step;
+            sum += (speed(curve, a) + 4 * speed(curve, a + step * 0.5) + speed(curve, a + step)) * step / 6;
+        }
+        return sum;
+    }
+
+    private static double speed(CurvedPathComponent.CubicBezier curve, double t) {
+        double b1 = 3 * (1 - t) * (1 - t);
+        double b2 = 6 * (1 - t) * t;
+        double b3 = 3 * t * t;
+        double dx = b1 * (curve.f2.x - curve.f1.x) + b2 * (curve.f3.x - curve.f2.x) + b3 * (curve.f4.x - curve.f3.x);
+        double dy = b1 * (curve.f2.y - curve.f1.y) + b2 * (curve.f3.y - curve.f2.y) + b3 * (curve.f4.y - curve.f3.y);
+        double dz = b1 * (curve.f2.z - curve.f1.z) + b2 * (curve.f3.z - curve.f2.z) + b3 * (curve.f4.z - curve.f3.z);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}